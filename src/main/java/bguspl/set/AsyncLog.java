@@ -0,0 +1,229 @@
+package bguspl.set;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import java.util.logging.Handler;
+import java.util.logging.Level;
+import java.util.logging.LogRecord;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+
+/**
+ * Logs the frequent game events (user interface updates and key presses) off the game threads.
+ * Game threads only fill a pre-allocated record in a bounded lock-free ring with the event and its arguments; a
+ * background writer formats the records and hands them to the logger in batches, flushing its handlers once per
+ * batch. When the ring is full the newest record is dropped (game threads never wait for the log) and counted.
+ */
+public class AsyncLog {
+
+    /**
+     * The events that can be logged, with their message formats.
+     */
+    public enum Event {
+        TEXT("%s"),
+        PLACE_CARD("placing card %d in slot %d"),
+        REMOVE_CARD("removing card from slot %d"),
+        PLACE_TOKEN("player %d placing token on slot %d"),
+        REMOVE_TOKENS("removing all tokens"),
+        REMOVE_SLOT_TOKENS("removing tokens from slot %d"),
+        REMOVE_TOKEN("removing player %d token from slot %d"),
+        COUNTDOWN("updating countdown to %d"),
+        ELAPSED("updating elapsed time to %d"),
+        FREEZE("setting player %d freeze to %d"),
+        SCORE("setting player %d score to %d"),
+        KEY_PRESSED("key %d was pressed by player %d");
+
+        final String format;
+
+        Event(String format) {
+            this.format = format;
+        }
+    }
+
+    /**
+     * A record in the ring. Its sequence tells who owns it: sequence == s means it is free for the producer of
+     * sequence s, sequence == s + 1 means it holds the record of sequence s for the writer.
+     */
+    private static final class Record {
+        volatile long sequence;
+        long millis;
+        Level level;
+        Event event;
+        long a;
+        long b;
+        String text;
+    }
+
+    private static final int CAPACITY = 1 << 16;
+    private static final int BATCH = 1024;
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final long IDLE_FLUSH_MILLIS = 1000;
+
+    /**
+     * The asynchronous log of every logger (created on first use).
+     */
+    private static final Map<Logger, AsyncLog> logs = new ConcurrentHashMap<>();
+
+    private final Logger logger;
+    private final Record[] ring = new Record[CAPACITY];
+
+    /**
+     * The sequence of the next record to claim (producers).
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The sequence of the next record to write (written by the writer only).
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    private AsyncLog(Logger logger) {
+        this.logger = logger;
+        for (int i = 0; i < CAPACITY; i++) {
+            ring[i] = new Record();
+            ring[i].sequence = i;
+        }
+        Thread writer = new Thread(this::write, "log-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * @return - the asynchronous log of a logger.
+     */
+    public static AsyncLog of(Logger logger) {
+        return logs.computeIfAbsent(logger, AsyncLog::new);
+    }
+
+    /**
+     * Waits until everything logged so far through the asynchronous log of a logger (if any) is written.
+     */
+    public static void drain(Logger logger) {
+        AsyncLog log = logs.get(logger);
+        if (log != null) log.drain();
+    }
+
+    public void log(Level level, Event event) {
+        log(level, event, 0, 0, null);
+    }
+
+    public void log(Level level, Event event, long a) {
+        log(level, event, a, 0, null);
+    }
+
+    public void log(Level level, Event event, long a, long b) {
+        log(level, event, a, b, null);
+    }
+
+    public void log(Level level, String text) {
+        log(level, Event.TEXT, 0, 0, text);
+    }
+
+    /**
+     * Queues a record for the writer. Never blocks: if the ring is full the record is dropped.
+     *
+     * @return - true iff the record was queued (or is below the logger's level).
+     */
+    private boolean log(Level level, Event event, long a, long b, String text) {
+        if (!logger.isLoggable(level)) return true;
+        while (true) {
+            long sequence = tail.get();
+            Record record = ring[(int) sequence & (CAPACITY - 1)];
+            long recordSequence = record.sequence;
+            if (recordSequence < sequence) { // still holds a record of the previous lap: the ring is full
+                dropped.incrementAndGet();
+                return false;
+            }
+            if (recordSequence == sequence && tail.compareAndSet(sequence, sequence + 1)) {
+                record.millis = System.currentTimeMillis();
+                record.level = level;
+                record.event = event;
+                record.a = a;
+                record.b = b;
+                record.text = text;
+                record.sequence = sequence + 1; // publishes the record to the writer
+                return true;
+            }
+            // otherwise another producer claimed this sequence first, try the next one
+        }
+    }
+
+    /**
+     * @return - the number of records dropped because the ring was full.
+     */
+    public long dropped() {
+        return dropped.get();
+    }
+
+    /**
+     * @return - the number of records written so far.
+     */
+    public long written() {
+        return head.get();
+    }
+
+    /**
+     * The main loop of the writer thread.
+     */
+    private void write() {
+        long lastFlush = System.currentTimeMillis();
+        long reportedDrops = 0;
+        while (true) {
+            int written = writeBatch();
+            long now = System.currentTimeMillis();
+            long drops = dropped.get();
+            if (drops > reportedDrops) {
+                logger.severe("warning: " + (drops - reportedDrops) + " log records were dropped (log overloaded)");
+                reportedDrops = drops;
+            }
+            if (written > 0 || now - lastFlush >= IDLE_FLUSH_MILLIS) {
+                for (Handler handler : logger.getHandlers()) handler.flush();
+                lastFlush = now;
+            }
+            if (written == 0) LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+        }
+    }
+
+    /**
+     * Formats and writes the records that are ready, up to a batch.
+     *
+     * @return - the number of records written.
+     */
+    @SuppressWarnings("deprecation") // LogRecord.setInstant replaced setMillis in Java 9, the game targets Java 1.8
+    private int writeBatch() {
+        long sequence = head.get();
+        int written = 0;
+        for (; written < BATCH; written++, sequence++) {
+            Record record = ring[(int) sequence & (CAPACITY - 1)];
+            if (record.sequence != sequence + 1) break; // not published yet
+            String message = record.event == Event.TEXT ? record.text : format(record.event.format, record.a, record.b);
+            LogRecord logRecord = new LogRecord(record.level, message);
+            logRecord.setMillis(record.millis);
+            logRecord.setLoggerName(logger.getName());
+            record.text = null;
+            record.sequence = sequence + CAPACITY; // frees the record for the next lap
+            head.lazySet(sequence + 1);
+            logger.log(logRecord);
+        }
+        return written;
+    }
+
+    /**
+     * Waits (up to a few seconds) until everything logged so far is written, and flushes the logger's handlers.
+     */
+    public void drain() {
+        long target = tail.get();
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (head.get() < target && System.nanoTime() < deadline)
+            LockSupport.parkNanos(IDLE_PARK_NANOS);
+        if (dropped.get() > 0)
+            logger.severe(format("%d log records were written, %d dropped", head.get(), dropped.get()));
+        for (Handler handler : logger.getHandlers()) handler.flush();
+    }
+}
@@ -0,0 +1,187 @@
+package bguspl.set;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.net.URL;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * The card images of all the game windows in the process, scaled or drawn to their cell sizes.
+ * Images are decoded (or drawn) and scaled in parallel on a pool of background threads the first time they are needed, and kept
+ * in a cache bounded by the memory they take, evicting the least recently shown images first.
+ */
+class CardImages {
+
+    private static final CardImages shared = new CardImages();
+
+    private final ExecutorService loaders;
+
+    /**
+     * The scaled images by key (see key), in access order (least recently used first). Guarded by itself.
+     */
+    private final LinkedHashMap<String, Image> cache = new LinkedHashMap<>(16, 0.75f, true);
+
+    /**
+     * The images being loaded by key, and the ones that failed to load.
+     */
+    private final Map<String, CompletableFuture<Image>> loading = new ConcurrentHashMap<>();
+
+    /**
+     * The memory taken by the cached images and the bound it must stay under. Guarded by the cache.
+     */
+    private long bytes;
+    private long capacity;
+
+    private CardImages() {
+        AtomicInteger loaderCount = new AtomicInteger();
+        loaders = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), task -> {
+            Thread loader = new Thread(task, "card-image-loader-" + loaderCount.incrementAndGet());
+            loader.setDaemon(true);
+            return loader;
+        });
+    }
+
+    /**
+     * @param capacity - the memory (in bytes) the cache may take. The cache takes the largest capacity asked for.
+     * @return - the card images shared by all the game windows.
+     */
+    static CardImages shared(long capacity) {
+        synchronized (shared.cache) {
+            shared.capacity = Math.max(shared.capacity, capacity);
+        }
+        return shared;
+    }
+
+    private static String key(String name, int width, int height) {
+        return name + "@" + width + "x" + height;
+    }
+
+    /**
+     * @return - the image if it is loaded, null otherwise.
+     */
+    Image get(String name, int width, int height) {
+        synchronized (cache) {
+            return cache.get(key(name, width, height));
+        }
+    }
+
+    /**
+     * Starts loading an image resource in the background, unless it is already loaded or being loaded.
+     *
+     * @param name   - the resource name of the image.
+     * @param width  - the width to scale the image to.
+     * @param height - the height to scale the image to.
+     * @param gc     - the graphics configuration of the screen the image is shown on.
+     * @return - the loading of the image. It fails if the image cannot be loaded (and is not retried).
+     */
+    CompletableFuture<Image> load(String name, int width, int height, GraphicsConfiguration gc) {
+        return load(name, width, height, () -> scale(read(name), width, height, gc));
+    }
+
+    /**
+     * Starts making an image in the background, unless it is already loaded or being made.
+     *
+     * @param name   - the name of the image.
+     * @param width  - the width of the image.
+     * @param height - the height of the image.
+     * @param source - makes the image (of the given size).
+     * @return - the making of the image. It fails if the image cannot be made (and is not retried).
+     */
+    CompletableFuture<Image> load(String name, int width, int height, Supplier<Image> source) {
+        String key = key(name, width, height);
+        Image image = get(name, width, height);
+        if (image != null) return CompletableFuture.completedFuture(image);
+        CompletableFuture<Image> loaded = loading.computeIfAbsent(key, k -> CompletableFuture.supplyAsync(() -> {
+            Image made = source.get();
+            put(k, made, (long) width * height * 4);
+            return made;
+        }, loaders));
+        loaded.thenRun(() -> loading.remove(key, loaded)); // failed loadings stay, so they are not retried
+        return loaded;
+    }
+
+    /**
+     * Loads an image resource in the calling thread (for images that must be shown from the first frame).
+     */
+    Image loadNow(String name, int width, int height, GraphicsConfiguration gc) {
+        return loadNow(name, width, height, () -> scale(read(name), width, height, gc));
+    }
+
+    /**
+     * Makes an image in the calling thread (for images that must be shown from the first frame).
+     */
+    Image loadNow(String name, int width, int height, Supplier<Image> source) {
+        Image image = get(name, width, height);
+        if (image != null) return image;
+        image = source.get();
+        put(key(name, width, height), image, (long) width * height * 4);
+        return image;
+    }
+
+    private static BufferedImage read(String name) {
+        URL imageResource = CardImages.class.getClassLoader().getResource(name);
+        try {
+            if (imageResource == null) throw new FileNotFoundException(name);
+            return ImageIO.read(imageResource);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    /**
+     * Scales an image to the cell size, into an image compatible with the screen, so that painting a cell is a single
+     * unscaled copy.
+     */
+    private static Image scale(Image image, int width, int height, GraphicsConfiguration gc) {
+        BufferedImage scaled = gc != null
+                ? gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+        Graphics2D g = scaled.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g.drawImage(image, 0, 0, width, height, null);
+        g.dispose();
+        return scaled;
+    }
+
+    private void put(String key, Image image, long size) {
+        synchronized (cache) {
+            if (cache.put(key, image) == null) bytes += size;
+            Iterator<Map.Entry<String, Image>> eldest = cache.entrySet().iterator();
+            while (bytes > capacity && cache.size() > 1) {
+                Image evicted = eldest.next().getValue();
+                eldest.remove();
+                bytes -= (long) evicted.getWidth(null) * evicted.getHeight(null) * 4;
+            }
+        }
+    }
+
+    /**
+     * @return - the memory (in bytes) taken by the cached images.
+     */
+    long bytes() {
+        synchronized (cache) {
+            return bytes;
+        }
+    }
+
+    /**
+     * @return - the number of cached images.
+     */
+    int size() {
+        synchronized (cache) {
+            return cache.size();
+        }
+    }
+}
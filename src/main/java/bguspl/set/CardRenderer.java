@@ -0,0 +1,198 @@
+package bguspl.set;
+
+import java.awt.*;
+import java.awt.geom.AffineTransform;
+import java.awt.geom.Path2D;
+import java.awt.geom.RoundRectangle2D;
+import java.awt.image.BufferedImage;
+
+/**
+ * Draws cards from their features, for decks of any feature size and feature count.
+ * The first four features are drawn as in the classic game: the number of shapes, their color, their shape (oval,
+ * diamond, squiggle, and then polygons with more and more sides) and their shading (solid, striped, open, and then
+ * lighter and lighter fills). Any further features are written at the bottom of the card.
+ */
+class CardRenderer {
+
+    private static final Color[] CLASSIC_COLORS = {new Color(0xE0, 0x20, 0x20), new Color(0x10, 0x90, 0x30),
+            new Color(0x60, 0x20, 0x90)};
+
+    private final int featureSize;
+
+    CardRenderer(Config config) {
+        this.featureSize = config.featureSize;
+    }
+
+    /**
+     * @param features - the features of the card.
+     * @param width    - the width of the image.
+     * @param height   - the height of the image.
+     * @param gc       - the graphics configuration of the screen the image is shown on (null if none).
+     * @return - an image of the card.
+     */
+    Image draw(int[] features, int width, int height, GraphicsConfiguration gc) {
+        BufferedImage image = newImage(width, height, gc);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        Shape card = drawCard(g, width, height);
+
+        int count = feature(features, 0) + 1;
+        Color color = color(feature(features, 1));
+        int shape = feature(features, 2);
+        int shading = feature(features, 3);
+
+        // the shapes are laid side by side, in the middle of the card
+        Rectangle inner = card.getBounds();
+        int margin = Math.max(2, inner.height / 8);
+        inner.grow(-margin, -margin);
+        if (features.length > 4) inner.height -= inner.height / 5; // room for the other features
+        double slot = (double) inner.width / count;
+        double shapeWidth = Math.min(slot * 0.8, inner.height * 0.45);
+        double shapeHeight = Math.min(inner.height * 0.9, shapeWidth * 2.2);
+        double top = inner.y + (inner.height - shapeHeight) / 2;
+        double left = inner.x + (inner.width - slot * count) / 2 + (slot - shapeWidth) / 2;
+        g.setStroke(new BasicStroke(Math.max(1f, (float) shapeWidth / 20)));
+        for (int i = 0; i < count; i++)
+            drawShape(g, shape(shape, left + i * slot, top, shapeWidth, shapeHeight), color, shading);
+
+        if (features.length > 4) {
+            StringBuilder text = new StringBuilder();
+            for (int i = 4; i < features.length; i++)
+                text.append(i > 4 ? " " : "").append(Integer.toString(features[i], Character.MAX_RADIX));
+            g.setColor(Color.DARK_GRAY);
+            g.setFont(new Font("SansSerif", Font.BOLD, Math.max(8, height / 10)));
+            FontMetrics metrics = g.getFontMetrics();
+            g.drawString(text.toString(), (width - metrics.stringWidth(text.toString())) / 2,
+                    inner.y + inner.height + (margin + metrics.getAscent()) / 2);
+        }
+        g.dispose();
+        return image;
+    }
+
+    /**
+     * @return - an image of an empty place on the table.
+     */
+    Image drawEmpty(int width, int height, GraphicsConfiguration gc) {
+        BufferedImage image = newImage(width, height, gc);
+        Graphics2D g = image.createGraphics();
+        g.setRenderingHint(RenderingHints.KEY_ANTIALIASING, RenderingHints.VALUE_ANTIALIAS_ON);
+        Shape card = cardShape(width, height);
+        g.setColor(new Color(0xE8, 0xE8, 0xE8));
+        g.fill(card);
+        g.setColor(Color.LIGHT_GRAY);
+        g.draw(card);
+        g.dispose();
+        return image;
+    }
+
+    private static BufferedImage newImage(int width, int height, GraphicsConfiguration gc) {
+        return gc != null
+                ? gc.createCompatibleImage(width, height, Transparency.TRANSLUCENT)
+                : new BufferedImage(width, height, BufferedImage.TYPE_INT_ARGB_PRE);
+    }
+
+    private static Shape cardShape(int width, int height) {
+        int inset = Math.max(1, Math.min(width, height) / 40);
+        int arc = Math.min(width, height) / 8;
+        return new RoundRectangle2D.Double(inset, inset, width - 2 * inset - 1, height - 2 * inset - 1, arc, arc);
+    }
+
+    private static Shape drawCard(Graphics2D g, int width, int height) {
+        Shape card = cardShape(width, height);
+        g.setColor(Color.WHITE);
+        g.fill(card);
+        g.setColor(Color.GRAY);
+        g.draw(card);
+        return card;
+    }
+
+    /**
+     * @return - the value of a feature, or 0 if the card does not have it.
+     */
+    private static int feature(int[] features, int index) {
+        return index < features.length ? features[index] : 0;
+    }
+
+    private Color color(int value) {
+        if (featureSize <= CLASSIC_COLORS.length) return CLASSIC_COLORS[value];
+        return Color.getHSBColor((float) value / featureSize, 0.85f, 0.75f);
+    }
+
+    private static Shape shape(int value, double x, double y, double width, double height) {
+        switch (value) {
+            case 0:
+                return new RoundRectangle2D.Double(x, y, width, height, width, width);
+            case 1:
+                Path2D.Double diamond = new Path2D.Double();
+                diamond.moveTo(x + width / 2, y);
+                diamond.lineTo(x + width, y + height / 2);
+                diamond.lineTo(x + width / 2, y + height);
+                diamond.lineTo(x, y + height / 2);
+                diamond.closePath();
+                return diamond;
+            case 2:
+                Path2D.Double squiggle = new Path2D.Double();
+                squiggle.moveTo(x + width * 0.3, y);
+                squiggle.curveTo(x + width * 1.1, y, x + width * 0.6, y + height * 0.5, x + width, y + height * 0.8);
+                squiggle.curveTo(x + width * 1.1, y + height * 1.05, x + width * 0.4, y + height, x + width * 0.15, y + height * 0.9);
+                squiggle.curveTo(x - width * 0.1, y + height, x + width * 0.4, y + height * 0.5, x, y + height * 0.2);
+                squiggle.curveTo(x - width * 0.1, y - height * 0.05, x + width * 0.15, y, x + width * 0.3, y);
+                squiggle.closePath();
+                return squiggle;
+            default:
+                // a polygon with as many sides as the value (triangle, square, ...), pointing up
+                Path2D.Double polygon = new Path2D.Double();
+                double radius = Math.min(width, height) / 2;
+                double centerX = x + width / 2;
+                double centerY = y + height / 2;
+                for (int i = 0; i < value; i++) {
+                    double angle = -Math.PI / 2 + 2 * Math.PI * i / value;
+                    double px = centerX + radius * Math.cos(angle);
+                    double py = centerY + radius * Math.sin(angle);
+                    if (i == 0) polygon.moveTo(px, py);
+                    else polygon.lineTo(px, py);
+                }
+                polygon.closePath();
+                return stretch(polygon, centerX, centerY, height, radius);
+        }
+    }
+
+    private void drawShape(Graphics2D g, Shape shape, Color color, int shading) {
+        g.setColor(color);
+        switch (shading) {
+            case 0: // solid
+                g.fill(shape);
+                break;
+            case 1: // striped
+                Shape clip = g.getClip();
+                g.clip(shape);
+                Rectangle bounds = shape.getBounds();
+                Stroke stroke = g.getStroke();
+                g.setStroke(new BasicStroke(1f));
+                for (int y = bounds.y; y <= bounds.y + bounds.height; y += 4)
+                    g.drawLine(bounds.x, y, bounds.x + bounds.width, y);
+                g.setStroke(stroke);
+                g.setClip(clip);
+                break;
+            case 2: // open
+                break;
+            default: // lighter and lighter fills
+                int alpha = 255 * (featureSize - shading) / (featureSize - 1);
+                g.setColor(new Color(color.getRed(), color.getGreen(), color.getBlue(), Math.max(24, Math.min(200, alpha))));
+                g.fill(shape);
+                g.setColor(color);
+        }
+        g.draw(shape);
+    }
+
+    /**
+     * Stretches a polygon vertically to the shape's height, so that it is as tall as the other shapes.
+     */
+    private static Shape stretch(Shape polygon, double centerX, double centerY, double height, double radius) {
+        AffineTransform transform = new AffineTransform();
+        transform.translate(centerX, centerY);
+        transform.scale(1, height / (2 * radius));
+        transform.translate(-centerX, -centerY);
+        return transform.createTransformedShape(polygon);
+    }
+}
@@ -0,0 +1,38 @@
+package bguspl.set;
+
+/**
+ * The source of time for all game timing decisions (turn countdown, freezes, table delays).
+ */
+public interface Clock {
+
+    /**
+     * @return - the current time in milliseconds.
+     */
+    long currentTimeMillis();
+
+    /**
+     * Pauses the calling thread for the specified amount of clock time.
+     *
+     * @param millis - the number of milliseconds to sleep.
+     * @throws InterruptedException - if the calling thread was interrupted while sleeping.
+     */
+    void sleep(long millis) throws InterruptedException;
+
+    /**
+     * Pauses the calling thread until the clock reaches the specified time.
+     *
+     * @param time - the clock time (in milliseconds) to sleep until.
+     * @throws InterruptedException - if the calling thread was interrupted while sleeping.
+     */
+    void sleepUntil(long time) throws InterruptedException;
+
+    /**
+     * Waits on a monitor for at most the specified amount of clock time, or until the monitor is notified.
+     * The calling thread must own the monitor.
+     *
+     * @param monitor - the object to wait on.
+     * @param millis  - the maximal number of milliseconds to wait.
+     * @throws InterruptedException - if the calling thread was interrupted while waiting.
+     */
+    void await(Object monitor, long millis) throws InterruptedException;
+}
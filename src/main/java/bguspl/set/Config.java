@@ -47,7 +47,33 @@ public class Config {
     public final int computerPlayers;
 
     /**
-     * The total number of players (human + computer) in the game
+     * The number of remote players (i.e. input comes from clients of the game server). Their ids follow the human players.
+     */
+    public final int remotePlayers;
+
+    /**
+     * The TCP port the game server listens on for the remote players (0 for any free port)
+     */
+    public final int serverPort;
+
+    /**
+     * The number of spectators that may watch the game over TCP (0 for no spectator hub)
+     */
+    public final int spectators;
+
+    /**
+     * The TCP port the spectator hub listens on (0 for any free port)
+     */
+    public final int spectatorPort;
+
+    /**
+     * The file the game state is published to, for a viewer in another process (see StateViewer), empty for none.
+     * The game of a room of a host publishes to file-room
+     */
+    public final String sharedStateFile;
+
+    /**
+     * The total number of players (human + remote + computer) in the game
      */
     public final int players;
 
@@ -56,6 +82,47 @@ public class Config {
      */
     public final boolean hints;
 
+    /**
+     * Whether to register the live metrics of the game as JMX MBeans (for jconsole)
+     */
+    public final boolean jmx;
+
+    /**
+     * Whether to measure the contention on the monitors of the dealer and the players (reported at the end of the game)
+     */
+    public final boolean profileMonitors;
+
+    /**
+     * The seed from which all the game randomness (shuffles, dealing, computer players) is derived
+     * Note: if no seed is configured a random one is chosen (and logged, so the run can be repeated).
+     */
+    public final long seed;
+
+    /**
+     * What to do with the schedule of computer players key presses: "none", "record" or "replay"
+     */
+    public final String botScheduleMode;
+
+    /**
+     * The file the computer players schedule is recorded to or replayed from
+     */
+    public final String botScheduleFile;
+
+    /**
+     * The file the binary game journal is written to (segment files file.0, file.1, ...), empty for no journal
+     */
+    public final String journalFile;
+
+    /**
+     * The number of segment files in the ring of the game journal
+     */
+    public final int journalSegments;
+
+    /**
+     * The number of event records in each segment file of the game journal
+     */
+    public final int journalSegmentRecords;
+
     /**
      * The number of milliseconds until the dealer reshuffles the deck (0 show timer since last action, -1 show nothing)
      */
@@ -76,6 +143,12 @@ public class Config {
      */
     public final long pointFreezeMillis;
 
+    /**
+     * True iff the game runs without a graphical user interface on a virtual clock (for automated runs).
+     * Note: in headless mode there are no table delays and no end of game pause.
+     */
+    public final boolean headless;
+
     /**
      * The number of milliseconds to delay before removing/placing a card on the table
      */
@@ -132,6 +205,26 @@ public class Config {
      */
     public final int fontSize;
 
+    /**
+     * The number of times per second the game window shows the changes made by the game
+     */
+    public final int framesPerSecond;
+
+    /**
+     * The memory (in megabytes) the card images of all the game windows in the process may take
+     */
+    public final int imageCacheMegabytes;
+
+    /**
+     * Whether to draw the cards from their features (any deck) or show them from the card image files (the standard deck)
+     */
+    public final boolean drawCards;
+
+    /**
+     * The number of leading players the scoreboard shows (besides the human players) when there are more players
+     */
+    public final int scoreboardSize;
+
     /**
      * The scancodes of the keyboard input data for each player
      * Notes:
@@ -155,7 +248,7 @@ public class Config {
      * @param filename - the name of the configuration file.
      * @return - a properties object with the configuration file contents.
      */
-    private static Properties loadProperties(String filename, Logger logger) {
+    static Properties loadProperties(String filename, Logger logger) {
 
         Properties properties = new Properties();
 
@@ -201,15 +294,33 @@ public class Config {
         // gameplay settings
         humanPlayers = Integer.parseInt(properties.getProperty("HumanPlayers", "2"));
         computerPlayers = Integer.parseInt(properties.getProperty("ComputerPlayers", "0"));
-        players = humanPlayers + computerPlayers;
+        remotePlayers = Integer.parseInt(properties.getProperty("RemotePlayers", "0"));
+        serverPort = Integer.parseInt(properties.getProperty("ServerPort", "7777"));
+        spectators = Integer.parseInt(properties.getProperty("Spectators", "0"));
+        spectatorPort = Integer.parseInt(properties.getProperty("SpectatorPort", "7778"));
+        sharedStateFile = properties.getProperty("SharedStateFile", "").trim();
+        players = humanPlayers + remotePlayers + computerPlayers;
 
         hints = Boolean.parseBoolean(properties.getProperty("Hints", "False"));
+        headless = Boolean.parseBoolean(properties.getProperty("Headless", "False"));
+        jmx = Boolean.parseBoolean(properties.getProperty("Jmx", "True"));
+        profileMonitors = Boolean.parseBoolean(properties.getProperty("ProfileMonitors", "False"));
+        String seedString = properties.getProperty("Seed", "").trim();
+        seed = seedString.isEmpty() ? System.nanoTime() : Long.parseLong(seedString);
+        logger.severe("game seed is " + seed);
+        botScheduleMode = properties.getProperty("BotScheduleMode", "None").trim().toLowerCase();
+        botScheduleFile = properties.getProperty("BotScheduleFile", "bots.schedule").trim();
+        if (!botScheduleMode.equals("none") && !botScheduleMode.equals("record") && !botScheduleMode.equals("replay"))
+            logger.severe("warning: unknown bot schedule mode " + botScheduleMode + ". Using none.");
+        journalFile = properties.getProperty("JournalFile", "").trim();
+        journalSegments = Integer.parseInt(properties.getProperty("JournalSegments", "4"));
+        journalSegmentRecords = Integer.parseInt(properties.getProperty("JournalSegmentRecords", "65536"));
         turnTimeoutMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutSeconds", "60")) * 1000.0);
         turnTimeoutWarningMillis = (long) (Double.parseDouble(properties.getProperty("TurnTimeoutWarningSeconds", "60")) * 1000.0);
         pointFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PointFreezeSeconds", "1")) * 1000.0);
         penaltyFreezeMillis = (long) (Double.parseDouble(properties.getProperty("PenaltyFreezeSeconds", "3")) * 1000.0);
-        tableDelayMillis = (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
-        endGamePauseMillies = (long) (Double.parseDouble(properties.getProperty("EndGamePauseSeconds", "5")) * 1000.0);
+        tableDelayMillis = headless ? 0 : (long) (Double.parseDouble(properties.getProperty("TableDelaySeconds", "0.1")) * 1000.0);
+        endGamePauseMillies = headless ? 0 : (long) (Double.parseDouble(properties.getProperty("EndGamePauseSeconds", "5")) * 1000.0);
 
         // ui settings
         String[] names = properties.getProperty("PlayerNames", "Player 1, Player 2").split(",");
@@ -224,6 +335,10 @@ public class Config {
         playerCellWidth = Integer.parseInt(properties.getProperty("PlayerCellWidth", "300"));
         playerCellHeight = Integer.parseInt(properties.getProperty("PlayerCellHeight", "40"));
         fontSize = Integer.parseInt(properties.getProperty("FontSize", "40"));
+        framesPerSecond = Math.max(1, Integer.parseInt(properties.getProperty("FramesPerSecond", "60")));
+        imageCacheMegabytes = Integer.parseInt(properties.getProperty("ImageCacheMegabytes", "64"));
+        drawCards = Boolean.parseBoolean(properties.getProperty("DrawCards", "False"));
+        scoreboardSize = Integer.parseInt(properties.getProperty("ScoreboardSize", "10"));
 
         // keyboard input data
         playerKeys = new int[players][rows * columns];
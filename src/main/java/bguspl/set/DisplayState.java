@@ -0,0 +1,176 @@
+package bguspl.set;
+
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * What the game window should show, as written by the game threads and read by the event dispatch thread (EDT).
+ * Game threads only store values and raise dirty flags, never touching Swing and never waiting. Once per frame the
+ * EDT takes the dirty items and shows their latest values, so any number of updates to the same slot, label or timer
+ * between two frames cost one Swing update (last writer wins).
+ * <p>
+ * A dirty flag is always cleared before its value is read and raised after its value is written, so an update that
+ * races with a frame is shown by the next frame at the latest.
+ */
+class DisplayState {
+
+    static final int NO_CARD = -1;
+
+    /**
+     * Timer modes.
+     */
+    static final int TIMER_NONE = 0;
+    static final int TIMER_COUNTDOWN = 1;
+    static final int TIMER_WARN = 2;
+    static final int TIMER_ELAPSED = 3;
+
+    /**
+     * The number of 64 bit words of token bits per slot.
+     */
+    final int tokenWords;
+
+    private final AtomicIntegerArray cards;
+    private final AtomicLongArray tokens;
+    private final AtomicIntegerArray slotDirty;
+
+    private final AtomicLongArray freezes;
+    private final AtomicIntegerArray scores;
+    private final AtomicIntegerArray playerDirty;
+
+    /**
+     * The timer value and mode, packed as (millis << 2) | mode.
+     */
+    private final AtomicLong timer = new AtomicLong();
+    private final AtomicBoolean timerDirty = new AtomicBoolean();
+
+    private final AtomicReference<int[]> winners = new AtomicReference<>();
+
+    /**
+     * Raised with any other dirty flag, so that quiet frames cost one read.
+     */
+    private final AtomicBoolean dirty = new AtomicBoolean();
+
+    DisplayState(int slots, int players) {
+        tokenWords = (players + Long.SIZE - 1) / Long.SIZE;
+        cards = new AtomicIntegerArray(slots);
+        for (int slot = 0; slot < slots; slot++) cards.set(slot, NO_CARD);
+        tokens = new AtomicLongArray(slots * tokenWords);
+        slotDirty = new AtomicIntegerArray(slots);
+        freezes = new AtomicLongArray(players);
+        scores = new AtomicIntegerArray(players);
+        playerDirty = new AtomicIntegerArray(players);
+    }
+
+    // writers (any thread)
+
+    void setCard(int slot, int card) {
+        cards.set(slot, card);
+        markSlot(slot);
+    }
+
+    void setToken(int player, int slot, boolean placed) {
+        int word = slot * tokenWords + player / Long.SIZE;
+        long bit = 1L << (player % Long.SIZE);
+        long current;
+        do {
+            current = tokens.get(word);
+        } while (!tokens.compareAndSet(word, current, placed ? current | bit : current & ~bit));
+        markSlot(slot);
+    }
+
+    void clearTokens(int slot) {
+        for (int word = 0; word < tokenWords; word++)
+            tokens.set(slot * tokenWords + word, 0);
+        markSlot(slot);
+    }
+
+    void setTimer(int mode, long millis) {
+        timer.set(millis << 2 | mode);
+        timerDirty.set(true);
+        dirty.set(true);
+    }
+
+    void setFreeze(int player, long millis) {
+        freezes.set(player, millis);
+        markPlayer(player);
+    }
+
+    void setScore(int player, int score) {
+        scores.set(player, score);
+        markPlayer(player);
+    }
+
+    void setWinners(int[] players) {
+        winners.set(players.clone());
+        dirty.set(true);
+    }
+
+    private void markSlot(int slot) {
+        slotDirty.set(slot, 1);
+        dirty.set(true);
+    }
+
+    private void markPlayer(int player) {
+        playerDirty.set(player, 1);
+        dirty.set(true);
+    }
+
+    // reader (the EDT)
+
+    /**
+     * @return - true iff anything changed since the last call.
+     */
+    boolean takeDirty() {
+        return dirty.get() && dirty.getAndSet(false);
+    }
+
+    boolean takeSlot(int slot) {
+        return slotDirty.get(slot) != 0 && slotDirty.getAndSet(slot, 0) != 0;
+    }
+
+    boolean takePlayer(int player) {
+        return playerDirty.get(player) != 0 && playerDirty.getAndSet(player, 0) != 0;
+    }
+
+    boolean takeTimer() {
+        return timerDirty.get() && timerDirty.getAndSet(false);
+    }
+
+    int[] takeWinners() {
+        return winners.get() == null ? null : winners.getAndSet(null);
+    }
+
+    int card(int slot) {
+        return cards.get(slot);
+    }
+
+    long tokens(int slot, int word) {
+        return tokens.get(slot * tokenWords + word);
+    }
+
+    long freeze(int player) {
+        return freezes.get(player);
+    }
+
+    int score(int player) {
+        return scores.get(player);
+    }
+
+    /**
+     * @return - the timer value and mode, packed (see timerMillis and timerMode).
+     */
+    long timer() {
+        return timer.get();
+    }
+
+    static long timerMillis(long timer) {
+        return timer >> 2;
+    }
+
+    static int timerMode(long timer) {
+        return (int) (timer & 3);
+    }
+}
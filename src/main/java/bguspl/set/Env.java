@@ -1,5 +1,6 @@
 package bguspl.set;
 
+import java.util.Random;
 import java.util.logging.Logger;
 
 public class Env {
@@ -8,11 +9,51 @@ public class Env {
     public final Config config;
     public final UserInterface ui;
     public final Util util;
+    public final Clock clock;
+    public final GameExecutor executor;
+    public final GameJournal journal;
+    public final ScoreIndex scores;
+    public final GameMetrics metrics;
+    public final MonitorProfiler monitors;
 
     public Env(Logger logger, Config config, UserInterface ui, Util util) {
+        this(logger, config, ui, util, new SystemClock());
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, Clock clock) {
+        this(logger, config, ui, util, clock, new GameExecutor(logger));
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, Clock clock, GameExecutor executor) {
+        this(logger, config, ui, util, clock, executor, GameJournal.DISABLED);
+    }
+
+    public Env(Logger logger, Config config, UserInterface ui, Util util, Clock clock, GameExecutor executor,
+               GameJournal journal) {
         this.logger = logger;
         this.config = config;
         this.ui = ui;
         this.util = util;
+        this.clock = clock;
+        this.executor = executor;
+        this.journal = journal;
+        this.scores = new ScoreIndex(config.players);
+        this.metrics = new GameMetrics(config.players);
+        this.monitors = new MonitorProfiler(config.profileMonitors);
+    }
+
+    /**
+     * Creates a random generator for one component of the game, derived from the configured seed.
+     * The same seed and stream always produce the same sequence of numbers.
+     *
+     * @param stream - the id of the component (different components should use different streams).
+     * @return - a new random generator.
+     */
+    public Random random(long stream) {
+        // SplitMix64 finalizer, so that neighbouring streams get unrelated seeds
+        long z = config.seed + (stream + 1) * 0x9E3779B97F4A7C15L;
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return new Random(z ^ (z >>> 31));
     }
 }
@@ -0,0 +1,128 @@
+package bguspl.set;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * The JDK Flight Recorder events of the game, to see what the dealer and player threads were doing (e.g. when a game
+ * stalls) next to the JVM's own events: garbage collections, lock contention, CPU samples.
+ * <p>
+ * The events are disabled by default: an event that is not enabled costs a check of a flag (its allocation is
+ * optimized away), and its fields are filled in only when it should be committed. The game.jfc profile (in the
+ * resources) enables them, e.g.
+ * {@code java -XX:StartFlightRecording=settings=default,settings=game.jfc,filename=game.jfr -jar ...}
+ */
+public final class GameEvents {
+
+    private GameEvents() {}
+
+    @Name("bguspl.set.Round")
+    @Label("Round")
+    @Description("The table from dealing until it is collected (on a reshuffle or at the end of the game)")
+    @Category({"Set Card Game", "Dealer"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static class Round extends Event {
+        @Label("Deck")
+        @Description("The cards left in the deck when the round started")
+        public int deck;
+
+        @Label("Sets Found")
+        public int sets;
+
+        @Label("Timed Out")
+        public boolean timedOut;
+    }
+
+    @Name("bguspl.set.Reshuffle")
+    @Label("Reshuffle")
+    @Description("The turn timed out and the table goes back into the deck")
+    @Category({"Set Card Game", "Dealer"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static class Reshuffle extends Event {
+        @Label("Deck")
+        @Description("The cards in the deck, not counting the table")
+        public int deck;
+    }
+
+    @Name("bguspl.set.ClaimJudged")
+    @Label("Claim Judged")
+    @Category({"Set Card Game", "Dealer"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static class ClaimJudged extends Event {
+        @Label("Player")
+        public int player;
+
+        @Label("Slots")
+        public String slots;
+
+        @Label("Cards")
+        public String cards;
+
+        @Label("Verdict")
+        @Description("1 for a legal set, 0 for an illegal one, -1 if the cards are no longer on the table")
+        public int verdict;
+    }
+
+    @Name("bguspl.set.ClaimSubmitted")
+    @Label("Claim Submitted")
+    @Description("A claim of a player, from submitting it to the dealer until the player is released")
+    @Category({"Set Card Game", "Player"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static class ClaimSubmitted extends Event {
+        @Label("Player")
+        public int player;
+
+        @Label("Slots")
+        public String slots;
+    }
+
+    @Name("bguspl.set.Freeze")
+    @Label("Freeze")
+    @Description("A player frozen after scoring a point or after a penalty")
+    @Category({"Set Card Game", "Player"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static class Freeze extends Event {
+        @Label("Player")
+        public int player;
+
+        @Label("Penalty")
+        public boolean penalty;
+    }
+
+    @Name("bguspl.set.CardPlaced")
+    @Label("Card Placed")
+    @Category({"Set Card Game", "Table"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static class CardPlaced extends Event {
+        @Label("Slot")
+        public int slot;
+
+        @Label("Card")
+        public int card;
+    }
+
+    @Name("bguspl.set.CardRemoved")
+    @Label("Card Removed")
+    @Category({"Set Card Game", "Table"})
+    @Enabled(false)
+    @StackTrace(false)
+    public static class CardRemoved extends Event {
+        @Label("Slot")
+        public int slot;
+
+        @Label("Card")
+        @Description("The card removed (-1 if the slot was empty)")
+        public int card;
+    }
+}
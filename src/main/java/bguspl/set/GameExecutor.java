@@ -0,0 +1,134 @@
+package bguspl.set;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+
+/**
+ * Runs the threads of one game (dealer, players and computer players) and accounts for the resources they use.
+ * The threads are either dedicated ones, created per task, or workers borrowed from a pool shared by all the games
+ * (rooms) of a host.
+ */
+public class GameExecutor {
+
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    /**
+     * The shared pool to run on (null for dedicated threads).
+     */
+    private final ExecutorService pool;
+
+    /**
+     * The prefix of the names of the threads (e.g. the room name).
+     */
+    private final String namePrefix;
+
+    private final Logger logger;
+
+    /**
+     * Resource accounting of the tasks that have completed.
+     */
+    private final LongAdder cpuNanos = new LongAdder();
+    private final LongAdder allocatedBytes = new LongAdder();
+    private final LongAdder tasksStarted = new LongAdder();
+    private final AtomicInteger liveTasks = new AtomicInteger();
+    private final AtomicInteger peakLiveTasks = new AtomicInteger();
+
+    /**
+     * Constructor for a game running on dedicated threads.
+     *
+     * @param logger - the logger to report thread starts and stops to.
+     */
+    public GameExecutor(Logger logger) {
+        this(logger, null, "");
+    }
+
+    /**
+     * @param logger     - the logger to report thread starts and stops to.
+     * @param pool       - the shared pool to run on, or null for dedicated threads.
+     * @param namePrefix - the prefix of the names of the threads.
+     */
+    public GameExecutor(Logger logger, ExecutorService pool, String namePrefix) {
+        this.logger = logger;
+        this.pool = pool;
+        this.namePrefix = namePrefix;
+    }
+
+    /**
+     * Starts running a task of the game.
+     *
+     * @param name - the name of the task's thread.
+     * @param task - the task to run.
+     * @return - a future to wait for the task's completion with.
+     */
+    public Future<?> start(String name, Runnable task) {
+        String threadName = namePrefix + name;
+        FutureTask<?> future = new FutureTask<>(() -> runAccounted(threadName, task), null);
+        tasksStarted.increment();
+        peakLiveTasks.accumulateAndGet(liveTasks.incrementAndGet(), Math::max);
+        if (pool == null) new Thread(future, threadName).start();
+        else pool.execute(future);
+        return future;
+    }
+
+    private void runAccounted(String threadName, Runnable task) {
+        Thread thread = Thread.currentThread();
+        String previousName = thread.getName();
+        thread.setName(threadName);
+        long cpuStart = cpuTime();
+        long allocatedStart = allocatedBytes(thread);
+        ThreadLogger.logStart(logger, threadName);
+        try {
+            task.run();
+        } finally {
+            cpuNanos.add(cpuTime() - cpuStart);
+            allocatedBytes.add(allocatedBytes(thread) - allocatedStart);
+            liveTasks.decrementAndGet();
+            ThreadLogger.logStop(logger, threadName);
+            thread.setName(previousName);
+        }
+    }
+
+    private static long cpuTime() {
+        return threadBean.isCurrentThreadCpuTimeSupported() ? threadBean.getCurrentThreadCpuTime() : 0;
+    }
+
+    private static long allocatedBytes(Thread thread) {
+        if (threadBean instanceof com.sun.management.ThreadMXBean)
+            return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(thread.getId());
+        return 0;
+    }
+
+    /**
+     * @return - the CPU time (in nanoseconds) used by the completed tasks.
+     */
+    public long cpuNanos() {
+        return cpuNanos.sum();
+    }
+
+    /**
+     * @return - the number of bytes allocated by the completed tasks.
+     */
+    public long allocatedBytes() {
+        return allocatedBytes.sum();
+    }
+
+    /**
+     * @return - the number of tasks started so far.
+     */
+    public long tasksStarted() {
+        return tasksStarted.sum();
+    }
+
+    /**
+     * @return - the largest number of tasks that were running at the same time.
+     */
+    public int peakLiveTasks() {
+        return peakLiveTasks.get();
+    }
+}
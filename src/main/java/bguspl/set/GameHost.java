@@ -0,0 +1,147 @@
+package bguspl.set;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+import java.util.logging.Handler;
+import java.util.logging.Logger;
+
+/**
+ * Hosts many independent games (rooms) in one process.
+ * All the threads of all the rooms run on one shared pool of workers, which are reused from game to game, and rooms
+ * share the caches of card features and images, so the heap and the JIT warmup are paid once per process rather
+ * than once per game. The resources used by every room are reported when it ends.
+ */
+public class GameHost {
+
+    private final Logger logger;
+
+    /**
+     * The workers shared by all the rooms (daemons, so a stuck room does not keep the process alive).
+     */
+    private final ExecutorService workers;
+
+    /**
+     * The rooms that are still running, in the order they were opened.
+     */
+    private final List<Room> rooms = new ArrayList<>();
+
+    /**
+     * The reports of the rooms that are done (the rooms themselves are released).
+     */
+    private final List<String> reports = new ArrayList<>();
+
+    private int roomCount;
+
+    public GameHost(Logger logger) {
+        this.logger = logger;
+        AtomicInteger workerCount = new AtomicInteger();
+        workers = Executors.newCachedThreadPool(task -> {
+            Thread worker = new Thread(task, "host-worker-" + workerCount.incrementAndGet());
+            worker.setDaemon(true);
+            return worker;
+        });
+    }
+
+    /**
+     * Opens a room and starts its game.
+     *
+     * @param config - the configuration of the game.
+     * @return - the room.
+     */
+    public Room open(Config config) {
+        return open(config, room -> {});
+    }
+
+    /**
+     * Opens a room and starts its game.
+     *
+     * @param config - the configuration of the game.
+     * @param onEnd  - called (on a worker) once the room is done.
+     * @return - the room.
+     */
+    public synchronized Room open(Config config, Consumer<Room> onEnd) {
+        String name = "room-" + roomCount++;
+        Room room = new Room(name, logger, config, new GameExecutor(logger, workers, name + "-"), false);
+        rooms.add(room);
+        workers.execute(() -> {
+            try {
+                room.run();
+            } finally {
+                String report = room.report();
+                logger.severe(report);
+                synchronized (this) {
+                    rooms.remove(room);
+                    reports.add(report);
+                }
+                onEnd.accept(room);
+            }
+        });
+        return room;
+    }
+
+    /**
+     * Waits until all the rooms opened so far are done.
+     */
+    public void awaitAll() throws InterruptedException {
+        for (Room room : snapshot())
+            room.awaitEnd();
+    }
+
+    /**
+     * Ends the games of all the rooms and stops the workers once they are done.
+     */
+    public void shutdown() {
+        snapshot().forEach(Room::terminate);
+        workers.shutdown();
+    }
+
+    /**
+     * @return - the resources used by every room so far (done rooms first), one room per line.
+     */
+    public synchronized String report() {
+        StringBuilder report = new StringBuilder();
+        for (String done : reports)
+            report.append(done).append(System.lineSeparator());
+        for (Room room : rooms)
+            report.append(room.report()).append(System.lineSeparator());
+        return report.toString();
+    }
+
+    private synchronized List<Room> snapshot() {
+        return new ArrayList<>(rooms);
+    }
+
+    /**
+     * Runs several games side by side.
+     *
+     * @param args - the number of rooms (default 1) and the configuration file (default config.properties).
+     */
+    public static void main(String[] args) {
+        int roomCount = args.length > 0 ? Integer.parseInt(args[0]) : 1;
+        String configFile = args.length > 1 ? args[1] : "config.properties";
+
+        Logger logger = Main.initLogger();
+        ThreadLogger.logStart(logger, Thread.currentThread().getName());
+        GameHost host = new GameHost(logger);
+        long start = System.nanoTime();
+        for (int i = 0; i < roomCount; i++)
+            host.open(new Config(logger, configFile));
+
+        try {
+            host.awaitAll();
+        } catch (InterruptedException ignored) {
+        } finally {
+            host.shutdown();
+            String report = host.report();
+            System.out.print(report);
+            System.out.printf("%d rooms in %d ms%n", roomCount, (System.nanoTime() - start) / 1_000_000);
+            ThreadLogger.logStop(logger, Thread.currentThread().getName());
+            AsyncLog.drain(logger);
+            for (Handler h : logger.getHandlers()) h.flush();
+        }
+    }
+}
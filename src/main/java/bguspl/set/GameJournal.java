@@ -0,0 +1,265 @@
+package bguspl.set;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Logger;
+
+/**
+ * An append-only binary journal of the events of a game.
+ * Events are fixed-size records written into a ring of memory-mapped segment files (file.0, file.1, ...). A writer
+ * claims the next sequence number atomically and fills its record with absolute puts, so writers never lock, never
+ * wait for each other and never make a system call; the operating system writes the pages out on its own. Once the
+ * ring is full the oldest segment is overwritten, so the files always hold the latest events.
+ * <p>
+ * Record layout (big endian): sequence + 1 (long, 0 for an empty record, written last), System.nanoTime (long), type (int), 5 int arguments.
+ */
+public class GameJournal {
+
+    /**
+     * Event types and their arguments.
+     */
+    public static final int GAME_START = 1;    // players, table size, deck size, seed (low, high)
+    public static final int DEAL = 2;          // card, slot
+    public static final int REMOVE = 3;        // card, slot (the tokens on the slot are removed as well)
+    public static final int TOKEN_PLACE = 4;   // player, slot
+    public static final int TOKEN_REMOVE = 5;  // player, slot
+    public static final int CLAIM = 6;         // player, slots
+    public static final int VERDICT = 7;       // player, 1 (legal) / 0 (illegal) / -1 (discarded)
+    public static final int SCORE = 8;         // player, score
+    public static final int FREEZE = 9;        // player, millis
+    public static final int RESHUFFLE = 10;    // reshuffles so far, deck size
+    public static final int GAME_END = 11;     // sets found, reshuffles
+
+    /**
+     * The number of int arguments of a record.
+     */
+    public static final int ARGUMENTS = 5;
+
+    /**
+     * The size of a record in bytes.
+     */
+    public static final int RECORD_BYTES = 8 + 8 + 4 + 4 * ARGUMENTS;
+
+    /**
+     * A journal that records nothing.
+     */
+    public static final GameJournal DISABLED = new GameJournal();
+
+    /**
+     * The mapped segment files (null if disabled).
+     */
+    private final MappedByteBuffer[] segments;
+
+    private final int segmentRecords;
+
+    /**
+     * The sequence number of the next record.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+
+    private GameJournal() {
+        segments = null;
+        segmentRecords = 0;
+    }
+
+    /**
+     * Creates (or truncates) the segment files and maps them, and deletes the further segment files of an earlier
+     * journal of the same name (which had more segments), so they are not read back with this one.
+     *
+     * @param file           - the name of the journal (segment i is file.i).
+     * @param segmentCount   - the number of segment files in the ring.
+     * @param segmentRecords - the number of records in a segment file.
+     */
+    public GameJournal(String file, int segmentCount, int segmentRecords) throws IOException {
+        if (segmentCount <= 0 || segmentRecords <= 0)
+            throw new IllegalArgumentException("invalid journal size: " + segmentCount + " x " + segmentRecords);
+        this.segmentRecords = segmentRecords;
+        segments = new MappedByteBuffer[segmentCount];
+        long size = (long) segmentRecords * RECORD_BYTES;
+        for (int i = 0; i < segmentCount; i++) {
+            try (RandomAccessFile raf = new RandomAccessFile(segmentName(file, i), "rw")) {
+                raf.setLength(0);
+                raf.setLength(size);
+                segments[i] = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, size);
+            }
+            // touch every page now, so that writers do not take the page faults
+            for (int position = 0; position < size; position += 4096)
+                segments[i].put(position, (byte) 0);
+        }
+        for (int i = segmentCount; Files.deleteIfExists(Paths.get(segmentName(file, i))); i++);
+    }
+
+    /**
+     * Opens the journal the configuration asks for.
+     *
+     * @param config - the configuration of the game.
+     * @param suffix - appended to the configured file name (e.g. to tell the rooms of a host apart).
+     * @param logger - the logger to report errors to.
+     * @return - the journal, or DISABLED if journaling is off or the files cannot be created.
+     */
+    public static GameJournal open(Config config, String suffix, Logger logger) {
+        if (config.journalFile.isEmpty()) return DISABLED;
+        try {
+            return new GameJournal(config.journalFile + suffix, config.journalSegments, config.journalSegmentRecords);
+        } catch (IOException | IllegalArgumentException e) {
+            logger.severe("cannot create game journal " + config.journalFile + suffix + ": " + e + ". Not journaling.");
+            return DISABLED;
+        }
+    }
+
+    /**
+     * @return - the name of segment file i of a journal.
+     */
+    public static String segmentName(String file, int i) {
+        return file + "." + i;
+    }
+
+    /**
+     * @return - true iff events are recorded.
+     */
+    public boolean isEnabled() {
+        return segments != null;
+    }
+
+    public void record(int type, int a) {
+        record(type, a, 0, 0, 0, 0);
+    }
+
+    public void record(int type, int a, int b) {
+        record(type, a, b, 0, 0, 0);
+    }
+
+    /**
+     * Records an event. Never blocks and never throws.
+     *
+     * @param type - the type of the event.
+     */
+    public void record(int type, int a, int b, int c, int d, int e) {
+        if (segments == null) return;
+        long seq = sequence.getAndIncrement();
+        MappedByteBuffer segment = segments[(int) ((seq / segmentRecords) % segments.length)];
+        int position = (int) (seq % segmentRecords) * RECORD_BYTES;
+        segment.putLong(position, 0); // invalid while being rewritten
+        segment.putLong(position + 8, System.nanoTime());
+        segment.putInt(position + 16, type);
+        segment.putInt(position + 20, a);
+        segment.putInt(position + 24, b);
+        segment.putInt(position + 28, c);
+        segment.putInt(position + 32, d);
+        segment.putInt(position + 36, e);
+        segment.putLong(position, seq + 1);
+    }
+
+    /**
+     * @return - the number of events recorded so far (including the ones overwritten).
+     */
+    public long recorded() {
+        return sequence.get();
+    }
+
+    /**
+     * Writes the recorded events to the files (done by the operating system anyway, eventually).
+     */
+    public void flush() {
+        if (segments == null) return;
+        for (MappedByteBuffer segment : segments)
+            segment.force();
+    }
+
+    /**
+     * The events of a journal as read back from its files, in recording order, in flat arrays.
+     * A missing event (e.g. one that was being written when the process died) has type 0.
+     */
+    public static final class Recording {
+
+        /**
+         * The number of events.
+         */
+        public final int size;
+
+        /**
+         * The sequence number of the first event (0 unless the ring wrapped).
+         */
+        public final long firstSequence;
+
+        private final long[] times;
+        private final int[] types;
+        private final int[] arguments;
+
+        Recording(long firstSequence, int size) {
+            this.firstSequence = firstSequence;
+            this.size = size;
+            times = new long[size];
+            types = new int[size];
+            arguments = new int[size * ARGUMENTS];
+        }
+
+        public long time(int event) {
+            return times[event];
+        }
+
+        public int type(int event) {
+            return types[event];
+        }
+
+        /**
+         * @param event    - the index of the event.
+         * @param argument - the index of the argument (0 to ARGUMENTS - 1).
+         */
+        public int argument(int event, int argument) {
+            return arguments[event * ARGUMENTS + argument];
+        }
+    }
+
+    /**
+     * Reads the events of a journal from its segment files.
+     *
+     * @param file - the name of the journal (segment i is file.i).
+     * @return - the events still in the files, in recording order.
+     */
+    public static Recording read(String file) throws IOException {
+        List<ByteBuffer> buffers = new ArrayList<>();
+        for (int i = 0; Files.exists(Paths.get(segmentName(file, i))); i++)
+            buffers.add(ByteBuffer.wrap(Files.readAllBytes(Paths.get(segmentName(file, i)))));
+        if (buffers.isEmpty())
+            throw new FileNotFoundException(segmentName(file, 0));
+
+        // the ring holds a contiguous window of sequence numbers, find its bounds first
+        long first = Long.MAX_VALUE, last = -1;
+        for (ByteBuffer buffer : buffers)
+            for (int position = 0; position + RECORD_BYTES <= buffer.limit(); position += RECORD_BYTES) {
+                long seq = buffer.getLong(position) - 1;
+                if (seq < 0) continue;
+                first = Math.min(first, seq);
+                last = Math.max(last, seq);
+            }
+        if (last < 0) return new Recording(0, 0);
+        long capacity = 0;
+        for (ByteBuffer buffer : buffers) capacity += buffer.limit() / RECORD_BYTES;
+        if (last - first + 1 > capacity)
+            throw new IOException("the segments of " + file + " hold events " + first + " to " + last
+                    + ", more than the " + capacity + " they have room for (segments of different journals?)");
+
+        Recording recording = new Recording(first, (int) (last - first + 1));
+        for (ByteBuffer buffer : buffers)
+            for (int position = 0; position + RECORD_BYTES <= buffer.limit(); position += RECORD_BYTES) {
+                long seq = buffer.getLong(position) - 1;
+                if (seq < 0) continue;
+                int event = (int) (seq - first);
+                recording.times[event] = buffer.getLong(position + 8);
+                recording.types[event] = buffer.getInt(position + 16);
+                for (int k = 0; k < ARGUMENTS; k++)
+                    recording.arguments[event * ARGUMENTS + k] = buffer.getInt(position + 20 + 4 * k);
+            }
+        return recording;
+    }
+}
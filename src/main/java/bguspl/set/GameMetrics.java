@@ -0,0 +1,249 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+/**
+ * The live metrics of a game, for inspection with JMX tools such as jconsole (see the Jmx configuration property).
+ * The dealer, each player and the table are registered as MBeans named bguspl.set:room=...,type=....
+ * <p>
+ * The game threads only count: the counters are striped (LongAdder), so counting never contends, and they are summed
+ * when read. The gauges (queued claims, scores, cards and sets on the table) are read on demand, by the JMX thread,
+ * and may be slightly behind the game.
+ * <p>
+ * The latencies of the claims are recorded by stage, per player, in histograms (see LatencyHistogram) with a single
+ * writer each: the player thread records the stages it sees and the dealer thread the others. The game's latencies are
+ * the players' merged. They are logged at the end of the game and shown as percentiles by the MBeans.
+ */
+public class GameMetrics {
+
+    public interface DealerMXBean {
+
+        long getLoopIterations();
+
+        long getClaimsJudged();
+
+        long getLegalVerdicts();
+
+        long getIllegalVerdicts();
+
+        int getQueuedClaims();
+
+        long getReshuffles();
+
+        double getPlaceCardsMillis();
+
+        String[] getLatencies();
+    }
+
+    public interface PlayerMXBean {
+
+        long getActionsAccepted();
+
+        long getActionsDropped();
+
+        long getFreezeMillis();
+
+        int getScore();
+
+        String[] getLatencies();
+    }
+
+    public interface TableMXBean {
+
+        int getCardsOnTable();
+
+        int getLiveSets();
+    }
+
+    /**
+     * The stages of a claim, from the key press completing the set to the player resuming play: the press waiting in the
+     * input queue, placing its token, the claim waiting in the dealer's queue, the dealer judging it and the player
+     * waking up to the verdict. CLAIM is the whole of it.
+     */
+    public static final int INPUT_QUEUE = 0;
+    public static final int TOKEN_PLACEMENT = 1;
+    public static final int DEALER_QUEUE = 2;
+    public static final int VERIFICATION = 3;
+    public static final int WAKEUP = 4;
+    public static final int CLAIM = 5;
+    private static final String[] STAGE_NAMES = {"input queue", "token placement", "dealer queue", "verification",
+            "wakeup", "claim"};
+
+    /**
+     * Dealer counters.
+     */
+    private final LongAdder loopIterations = new LongAdder();
+    private final LongAdder claimsJudged = new LongAdder();
+    private final LongAdder legalVerdicts = new LongAdder();
+    private final LongAdder illegalVerdicts = new LongAdder();
+    private final LongAdder reshuffles = new LongAdder();
+    private final LongAdder placeCardsNanos = new LongAdder();
+
+    /**
+     * The time each player was frozen for.
+     */
+    private final LongAdder[] freezeMillis;
+
+    /**
+     * The latencies of each player, by stage.
+     */
+    private final LatencyHistogram[][] latencies;
+
+    /**
+     * The names of the registered MBeans.
+     */
+    private final List<ObjectName> registered = new ArrayList<>();
+
+    /**
+     * @param players - the number of players.
+     */
+    public GameMetrics(int players) {
+        freezeMillis = new LongAdder[players];
+        latencies = new LatencyHistogram[players][STAGE_NAMES.length];
+        for (int player = 0; player < players; player++) {
+            freezeMillis[player] = new LongAdder();
+            for (int stage = 0; stage < STAGE_NAMES.length; stage++)
+                latencies[player][stage] = new LatencyHistogram();
+        }
+    }
+
+    /**
+     * Counts an iteration of the dealer's loop.
+     */
+    public void loopIteration() {
+        loopIterations.increment();
+    }
+
+    /**
+     * Counts a claim judged by the dealer.
+     *
+     * @param verdict - 1 for a legal set, 0 for an illegal one, -1 if the claimed cards are no longer on the table.
+     */
+    public void claimJudged(int verdict) {
+        claimsJudged.increment();
+        if (verdict > 0) legalVerdicts.increment();
+        else if (verdict == 0) illegalVerdicts.increment();
+    }
+
+    /**
+     * Counts a reshuffle of the deck on turn timeout.
+     */
+    public void reshuffle() {
+        reshuffles.increment();
+    }
+
+    /**
+     * Counts the time the dealer spent placing cards on the table.
+     */
+    public void cardsPlaced(long nanos) {
+        placeCardsNanos.add(nanos);
+    }
+
+    /**
+     * Counts the time a player is frozen for.
+     */
+    public void frozen(int player, long millis) {
+        freezeMillis[player].add(millis);
+    }
+
+    /**
+     * Records the latency of a stage of a player's claim (by the thread that records the stage for the player).
+     *
+     * @param stage - the stage (e.g. DEALER_QUEUE).
+     */
+    public void latency(int player, int stage, long nanos) {
+        latencies[player][stage].record(nanos);
+    }
+
+    /**
+     * @param player - the player, or -1 for all the players.
+     * @return - the latencies of a player's claims (or the game's), a line per stage.
+     */
+    public String[] latencies(int player) {
+        String[] lines = new String[STAGE_NAMES.length];
+        for (int stage = 0; stage < STAGE_NAMES.length; stage++) {
+            LatencyHistogram histogram;
+            if (player >= 0) histogram = latencies[player][stage];
+            else {
+                histogram = new LatencyHistogram();
+                for (LatencyHistogram[] playerLatencies : latencies) histogram.add(playerLatencies[stage]);
+            }
+            lines[stage] = STAGE_NAMES[stage] + ": " + histogram;
+        }
+        return lines;
+    }
+
+    /**
+     * Registers the MBeans of a game with the platform MBean server (failures are logged, the game runs without them).
+     *
+     * @param room - the name of the room of the game.
+     */
+    public synchronized void register(Logger logger, String room, Dealer dealer, Table table, Player[] players,
+                                      Util util) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        String prefix = "bguspl.set:room=" + room + ",type=";
+        try {
+            register(server, prefix + "Dealer", new DealerMXBean() {
+                public long getLoopIterations() { return loopIterations.sum(); }
+                public long getClaimsJudged() { return claimsJudged.sum(); }
+                public long getLegalVerdicts() { return legalVerdicts.sum(); }
+                public long getIllegalVerdicts() { return illegalVerdicts.sum(); }
+                public int getQueuedClaims() { return dealer.getQueuedClaims(); }
+                public long getReshuffles() { return reshuffles.sum(); }
+                public double getPlaceCardsMillis() { return placeCardsNanos.sum() / 1e6; }
+                public String[] getLatencies() { return latencies(-1); }
+            });
+            for (Player player : players)
+                register(server, prefix + "Player,id=" + player.id, new PlayerMXBean() {
+                    public long getActionsAccepted() { return player.getAcceptedKeys(); }
+                    public long getActionsDropped() { return player.getDroppedKeys(); }
+                    public long getFreezeMillis() { return freezeMillis[player.id].sum(); }
+                    public int getScore() { return player.getScore(); }
+                    public String[] getLatencies() { return latencies(player.id); }
+                });
+            register(server, prefix + "Table", new TableMXBean() {
+                public int getCardsOnTable() { return table.countCards(); }
+                public int getLiveSets() {
+                    List<Integer> cards = table.getCardsOnTable().stream().filter(Objects::nonNull)
+                            .collect(Collectors.toList());
+                    return util.findSets(cards, Integer.MAX_VALUE).size();
+                }
+            });
+        } catch (JMException e) {
+            logger.warning("error registering the MBeans of " + room + ": " + e);
+        }
+    }
+
+    private void register(MBeanServer server, String name, Object mbean) throws JMException {
+        ObjectName objectName = new ObjectName(name);
+        server.registerMBean(mbean, objectName);
+        registered.add(objectName);
+    }
+
+    /**
+     * Unregisters the MBeans of the game.
+     */
+    public synchronized void unregister(Logger logger) {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        for (ObjectName name : registered)
+            try {
+                server.unregisterMBean(name);
+            } catch (JMException e) {
+                logger.warning("error unregistering " + name + ": " + e);
+            }
+        registered.clear();
+    }
+}
@@ -0,0 +1,357 @@
+package bguspl.set;
+
+import bguspl.set.ex.Player;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * A non-blocking TCP server for the remote players of a game (see the RemotePlayers and ServerPort configuration
+ * properties). Each connected client plays one of the remote players: its key presses are fed to the player like the
+ * presses of the keyboard, and it is kept up to date with the game state (see WireProtocol).
+ * <p>
+ * A single server thread runs a selector loop over all the connections, with a direct buffer per connection for each
+ * direction. The game threads never touch the connections: the user interface events of the game are queued for the
+ * server thread, which applies them to its game state and sends each client the operations since the version it has.
+ * A client gets new operations only once it took all the bytes sent to it before, so a slow client never has more than
+ * one message waiting: the operations it missed meanwhile are coalesced into one DELTA message, or into a SNAPSHOT once
+ * they are no longer logged or do not fit.
+ */
+public class GameServer implements UserInterface, Runnable {
+
+    /**
+     * The operations kept for clients that are behind. A client that misses more gets a snapshot.
+     */
+    private static final int LOGGED_OPERATIONS = 4096;
+
+    /**
+     * The operations the game threads may queue before the server thread applies them (more are dropped).
+     */
+    private static final int QUEUED_OPERATIONS = 1 << 14;
+
+    /**
+     * The minimal size of the output buffer of a connection (it always holds a welcome and a snapshot).
+     */
+    private static final int OUTPUT_BYTES = 64 * 1024;
+
+    private final class Client {
+        final SocketChannel channel;
+        final int player;
+        final ByteBuffer in = ByteBuffer.allocateDirect(64 * WireProtocol.INPUT_FRAME);
+        final ByteBuffer out = ByteBuffer.allocateDirect(outputBytes);
+        SelectionKey key;
+
+        /**
+         * The version of the game state the client was sent.
+         */
+        int version;
+
+        Client(SocketChannel channel, int player) {
+            this.channel = channel;
+            this.player = player;
+        }
+    }
+
+    private final Logger logger;
+    private final Config config;
+    private final Player[] players;
+
+    /**
+     * The id of the first remote player (the remote players follow the human players).
+     */
+    private final int firstRemote;
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+
+    /**
+     * The connected clients by remote player (null if none), the free remote players, the game state and the version
+     * of the state last sent. Used by the server thread only.
+     */
+    private final Client[] clients;
+    private final ArrayDeque<Integer> freeSeats = new ArrayDeque<>();
+    private final GameState state;
+    private final int outputBytes;
+    private int sentVersion;
+
+    /**
+     * The operations on the game state, queued by the game threads, and the number of dropped ones reported so far.
+     */
+    private final OperationRing operations = new OperationRing(QUEUED_OPERATIONS);
+    private long reportedDrops;
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+
+    private volatile boolean closed;
+    private long connections;
+    private long presses;
+    private long bytesSent;
+    private long deltas;
+    private long snapshots;
+
+    /**
+     * Opens the server's port.
+     *
+     * @param players - the players of the game (filled in by the time the server runs).
+     */
+    public GameServer(Logger logger, Config config, Player[] players) throws IOException {
+        this.logger = logger;
+        this.config = config;
+        this.players = players;
+        firstRemote = config.humanPlayers;
+        clients = new Client[config.remotePlayers];
+        for (int seat = 0; seat < clients.length; seat++) freeSeats.add(seat);
+        state = new GameState(config.tableSize, config.players, LOGGED_OPERATIONS);
+        outputBytes = Math.max(OUTPUT_BYTES, 2 * (WireProtocol.welcomeSize()
+                + WireProtocol.snapshotSize(config.tableSize, config.players, config.players)));
+
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(new InetSocketAddress(config.serverPort), 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * @return - the port the server listens on.
+     */
+    public int port() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * The server thread starts here (the selector loop).
+     */
+    @Override
+    public void run() {
+        logger.info("game server listening on port " + port() + " for " + clients.length + " remote players");
+        try {
+            while (!closed) {
+                selector.select();
+                wakeupPending.set(false);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Client client = (Client) key.attachment();
+                    if (key.isReadable()) read(client);
+                    if (key.isValid() && key.isWritable()) flush(client);
+                }
+                update();
+            }
+        } catch (IOException e) {
+            if (!closed) logger.severe("game server failed: " + e);
+        } finally {
+            update(); // the last operations of the game (e.g. its end)
+            for (Client client : clients)
+                if (client != null) disconnect(client);
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException ignored) {}
+            logger.info("game server closed after " + connections + " connections and " + presses + " key presses, sent "
+                    + bytesSent + " bytes in " + deltas + " deltas and " + snapshots + " snapshots");
+        }
+    }
+
+    /**
+     * Stops the server and disconnects its clients.
+     */
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            Integer seat = freeSeats.poll();
+            if (seat == null) { // all the remote players are taken
+                channel.close();
+                continue;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Client client = new Client(channel, firstRemote + seat);
+            client.key = channel.register(selector, SelectionKey.OP_READ, client);
+            clients[seat] = client;
+            connections++;
+            WireProtocol.putWelcome(client.out, client.player, state);
+            WireProtocol.putSnapshot(client.out, state);
+            snapshots++;
+            client.version = state.version();
+            flush(client);
+        }
+    }
+
+    private void read(Client client) {
+        try {
+            if (client.channel.read(client.in) < 0) {
+                disconnect(client);
+                return;
+            }
+        } catch (IOException e) {
+            disconnect(client);
+            return;
+        }
+        ByteBuffer in = client.in;
+        in.flip();
+        for (; in.remaining() >= WireProtocol.INPUT_FRAME; in.position(in.position() + WireProtocol.INPUT_FRAME)) {
+            int type = WireProtocol.inputType(in, in.position());
+            if (type == WireProtocol.HELLO && WireProtocol.inputArgument(in, in.position()) != WireProtocol.VERSION) {
+                logger.warning("disconnecting the client of player " + (client.player + 1) + ": protocol version "
+                        + WireProtocol.inputArgument(in, in.position()));
+                disconnect(client);
+                return;
+            }
+            int slot = WireProtocol.inputSlot(in, in.position());
+            if (type == WireProtocol.PRESS && slot < config.tableSize && players[client.player] != null) {
+                players[client.player].keyPressed(slot);
+                presses++;
+            }
+        }
+        in.compact();
+    }
+
+    private void disconnect(Client client) {
+        int seat = client.player - firstRemote;
+        if (clients[seat] != client) return;
+        clients[seat] = null;
+        freeSeats.add(seat);
+        client.key.cancel();
+        try {
+            client.channel.close();
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * Applies the queued operations to the game state, and sends them to the clients that took all they were sent.
+     */
+    private void update() {
+        long operation;
+        while ((operation = operations.poll()) != OperationRing.EMPTY)
+            state.apply(OperationRing.operation(operation), OperationRing.a(operation), OperationRing.b(operation));
+        long drops = operations.dropped();
+        if (drops > reportedDrops) {
+            logger.severe("warning: " + (drops - reportedDrops) + " game state operations were dropped (server "
+                    + "overloaded)");
+            reportedDrops = drops;
+        }
+        if (sentVersion == state.version()) return;
+        sentVersion = state.version();
+        for (Client client : clients)
+            if (client != null && client.out.position() == 0) flush(client);
+    }
+
+    /**
+     * Sends a client what it was not sent yet: the rest of its last message or, if it took all of it, the operations
+     * since its version.
+     */
+    private void flush(Client client) {
+        ByteBuffer out = client.out;
+        do {
+            if (out.position() == 0 && client.version < state.version()) {
+                int sent = WireProtocol.putChanges(out, state, client.version);
+                if (sent == WireProtocol.DELTA) deltas++;
+                else if (sent == WireProtocol.SNAPSHOT) snapshots++;
+                client.version = state.version();
+            }
+            out.flip();
+            try {
+                bytesSent += client.channel.write(out);
+            } catch (IOException e) {
+                disconnect(client);
+                return;
+            }
+            out.compact();
+        } while (out.position() == 0 && client.version < state.version()); // it took the rest of a message it fell behind
+        // wait for the connection to be writable only while some bytes could not be sent
+        client.key.interestOps(out.position() > 0 ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    /**
+     * Queues an operation on the game state for the server thread (called by the game threads).
+     */
+    private void post(int operation, int a, int b) {
+        operations.offer(OperationRing.pack(operation, a, b));
+        if (wakeupPending.compareAndSet(false, true)) selector.wakeup();
+    }
+
+    private static int millies(long millies) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, millies));
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        post(WireProtocol.CARD, slot, card);
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        post(WireProtocol.CARD, slot, GameState.NO_CARD);
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        post(WireProtocol.TOKEN_PLACED, slot, player);
+    }
+
+    @Override
+    public void removeTokens() {
+        post(WireProtocol.TABLE_CLEARED, 0, 0);
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        post(WireProtocol.SLOT_CLEARED, slot, 0);
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        post(WireProtocol.TOKEN_REMOVED, slot, player);
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        post(WireProtocol.COUNTDOWN, warn ? 1 : 0, millies(millies));
+    }
+
+    @Override
+    public void setElapsed(long millies) {}
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        post(WireProtocol.FREEZE, player, millies(millies));
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        post(WireProtocol.SCORE, player, score);
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        for (int player : players) post(WireProtocol.WINNER, player, 0);
+        post(WireProtocol.GAME_OVER, 0, 0);
+    }
+
+    @Override
+    public void dispose() {
+        close();
+    }
+}
@@ -0,0 +1,163 @@
+package bguspl.set;
+
+import java.util.Arrays;
+
+/**
+ * The state of a game as the clients of the game server see it: the cards and tokens on the table, the scores and
+ * freezes of the players, the countdown and the winners. Every change is an operation (see WireProtocol) that moves the
+ * state to its next version. The server's state also keeps a log of its latest operations, from which it sends each
+ * client the changes since the version the client has.
+ * <p>
+ * Not thread safe: the state is changed and read by one thread (the server thread, or a client's thread).
+ */
+public class GameState {
+
+    public static final int NO_CARD = -1;
+
+    public final int tableSize;
+    public final int players;
+    final int tokenWords;
+
+    final int[] cards;
+    final long[] tokens;
+    final int[] scores;
+    final int[] freezes;
+    int countdown;
+    boolean warn;
+    int[] winners = new int[0];
+    boolean over;
+    int version;
+
+    /**
+     * The latest operations, three ints each (operation, a, b), by version (null if not logged).
+     */
+    private final int[] log;
+    private final int logCapacity;
+
+    /**
+     * @param logCapacity - the number of latest operations to keep (0 for none).
+     */
+    public GameState(int tableSize, int players, int logCapacity) {
+        this.tableSize = tableSize;
+        this.players = players;
+        tokenWords = (players + Long.SIZE - 1) / Long.SIZE;
+        cards = new int[tableSize];
+        Arrays.fill(cards, NO_CARD);
+        tokens = new long[tableSize * tokenWords];
+        scores = new int[players];
+        freezes = new int[players];
+        this.logCapacity = logCapacity;
+        log = logCapacity > 0 ? new int[logCapacity * 3] : null;
+    }
+
+    /**
+     * Applies an operation and moves to the next version.
+     *
+     * @param operation - the operation (see WireProtocol).
+     * @param a         - its first argument.
+     * @param b         - its second argument.
+     */
+    public void apply(int operation, int a, int b) {
+        switch (operation) {
+            case WireProtocol.CARD:
+                cards[a] = b;
+                break;
+            case WireProtocol.TOKEN_PLACED:
+                tokens[a * tokenWords + b / Long.SIZE] |= 1L << (b % Long.SIZE);
+                break;
+            case WireProtocol.TOKEN_REMOVED:
+                tokens[a * tokenWords + b / Long.SIZE] &= ~(1L << (b % Long.SIZE));
+                break;
+            case WireProtocol.SLOT_CLEARED:
+                Arrays.fill(tokens, a * tokenWords, (a + 1) * tokenWords, 0);
+                break;
+            case WireProtocol.TABLE_CLEARED:
+                Arrays.fill(tokens, 0);
+                break;
+            case WireProtocol.SCORE:
+                scores[a] = b;
+                break;
+            case WireProtocol.FREEZE:
+                freezes[a] = b;
+                break;
+            case WireProtocol.COUNTDOWN:
+                warn = a != 0;
+                countdown = b;
+                break;
+            case WireProtocol.WINNER:
+                winners = Arrays.copyOf(winners, winners.length + 1);
+                winners[winners.length - 1] = a;
+                break;
+            case WireProtocol.GAME_OVER:
+                over = true;
+                break;
+            default:
+                throw new IllegalArgumentException("unknown operation " + operation);
+        }
+        if (log != null) {
+            int entry = (version % logCapacity) * 3;
+            log[entry] = operation;
+            log[entry + 1] = a;
+            log[entry + 2] = b;
+        }
+        version++;
+    }
+
+    /**
+     * @return - the oldest version whose operation is still in the log.
+     */
+    int oldestLogged() {
+        return Math.max(0, version - logCapacity);
+    }
+
+    /**
+     * @return - the operation that moved the state from a logged version to the next, and its arguments.
+     */
+    int loggedOperation(int version) {
+        return log[(version % logCapacity) * 3];
+    }
+
+    int loggedA(int version) {
+        return log[(version % logCapacity) * 3 + 1];
+    }
+
+    int loggedB(int version) {
+        return log[(version % logCapacity) * 3 + 2];
+    }
+
+    public int version() {
+        return version;
+    }
+
+    public int card(int slot) {
+        return cards[slot];
+    }
+
+    public boolean hasToken(int slot, int player) {
+        return (tokens[slot * tokenWords + player / Long.SIZE] & 1L << (player % Long.SIZE)) != 0;
+    }
+
+    public int score(int player) {
+        return scores[player];
+    }
+
+    public int freeze(int player) {
+        return freezes[player];
+    }
+
+    public int countdown() {
+        return countdown;
+    }
+
+    public boolean warn() {
+        return warn;
+    }
+
+    public boolean isOver() {
+        return over;
+    }
+
+    public int[] winners() {
+        return winners.clone();
+    }
+}
@@ -5,6 +5,7 @@ import bguspl.set.ex.Player;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
 import java.util.Arrays;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
 /**
@@ -16,14 +17,14 @@ class InputManager extends KeyAdapter {
     private final Player[] players;
     int[] keyMap = new int[MAX_KEY_CODE + 1];
     int[] keyToSlot = new int[MAX_KEY_CODE + 1];
-    private final Logger logger;
+    private final AsyncLog log;
 
     public InputManager(Logger logger, Config config, Player[] players) {
         this.players = players;
-        this.logger = logger;
+        this.log = AsyncLog.of(logger); // key presses are logged off the event dispatch thread
 
-        // initialize the keys
-        for (int player = 0; player < config.players; ++player)
+        // initialize the keys (of the human players only: the other players get their input elsewhere)
+        for (int player = 0; player < config.humanPlayers; ++player)
             for (int i = 0; i < config.playerKeys(player).length; i++) {
                 int keyCode = config.playerKeys(player)[i];
                 if (keyCode >= keyMap.length) reallocArrays(keyCode); // enlarge the array for higher key codes
@@ -42,8 +43,8 @@ class InputManager extends KeyAdapter {
         // dispatch the key event to the player according to the key map
         int keyCode = e.getKeyCode();
         int player = keyMap[keyCode] - 1;
-        if (player >= 0){
-            logger.severe("key " + keyCode + " was pressed by player " + (player + 1));
+        if (player >= 0 && players[player] != null){ // no players when only showing a game
+            log.log(Level.SEVERE, AsyncLog.Event.KEY_PRESSED, keyCode, player + 1);
             players[player].keyPressed(keyToSlot[keyCode]);
         }
     }
@@ -0,0 +1,122 @@
+package bguspl.set;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import static java.lang.String.format;
+
+/**
+ * A histogram of latencies (in nanoseconds) with log-linear buckets, like an HDR histogram: every power of two is split
+ * into 16 buckets, so a value is known to within 1/16 of itself, from nanoseconds to a minute (longer values are counted
+ * as a minute). Recording is a few arithmetic operations and never allocates.
+ * <p>
+ * A histogram has a single writer (e.g. a player thread): its counts are updated with ordered writes and may be read by
+ * any thread at any time, a reader racing the writer may miss the latest values.
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKET_BITS = 5;
+    private static final int HALF_BUCKET_COUNT = 1 << (SUB_BUCKET_BITS - 1);
+    static final long MAX_VALUE = (1L << 36) - 1; // about 68 seconds
+
+    private static final double[] PERCENTILES = {50, 90, 99, 99.9};
+
+    private static final int BUCKETS = index(MAX_VALUE) + 1;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @return - the bucket of a value: values below 32 have a bucket each, the buckets of larger values are 1/16 of
+     * their power of two wide.
+     */
+    private static int index(long value) {
+        int shift = Math.max(0, 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS + 1);
+        return shift * HALF_BUCKET_COUNT + (int) (value >>> shift);
+    }
+
+    /**
+     * @return - the highest value of a bucket.
+     */
+    private static long highestValue(int index) {
+        int shift = Math.max(0, index / HALF_BUCKET_COUNT - 1);
+        long low = (long) (index - shift * HALF_BUCKET_COUNT) << shift;
+        return low + (1L << shift) - 1;
+    }
+
+    /**
+     * Records a latency. Writer only.
+     *
+     * @param nanos - the latency (negative latencies, e.g. of an unset start time, are counted as 0).
+     */
+    public void record(long nanos) {
+        long value = Math.min(Math.max(nanos, 0), MAX_VALUE);
+        int index = index(value);
+        counts.lazySet(index, counts.get(index) + 1);
+        if (value > max.get()) max.lazySet(value);
+    }
+
+    /**
+     * Adds the counts of another histogram to this one (e.g. to merge the histograms of all the players).
+     */
+    public void add(LatencyHistogram other) {
+        for (int index = 0; index < BUCKETS; index++) {
+            long count = other.counts.get(index);
+            if (count != 0) counts.lazySet(index, counts.get(index) + count);
+        }
+        if (other.max.get() > max.get()) max.lazySet(other.max.get());
+    }
+
+    /**
+     * @return - the number of latencies recorded.
+     */
+    public long count() {
+        long count = 0;
+        for (int index = 0; index < BUCKETS; index++) count += counts.get(index);
+        return count;
+    }
+
+    /**
+     * @return - the longest latency recorded (0 if none).
+     */
+    public long max() {
+        return max.get();
+    }
+
+    /**
+     * @param percentile - the percentile (between 0 and 100).
+     * @return - the latency (in nanoseconds) that the percentile of the latencies do not exceed (0 if none).
+     */
+    public long percentile(double percentile) {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int index = 0; index < BUCKETS; index++) count += snapshot[index] = counts.get(index);
+        return percentile(snapshot, count, percentile);
+    }
+
+    private long percentile(long[] snapshot, long count, double percentile) {
+        long rank = Math.max(1, (long) Math.ceil(count * percentile / 100));
+        long seen = 0;
+        for (int index = 0; index < BUCKETS; index++) {
+            seen += snapshot[index];
+            if (seen >= rank) return Math.min(highestValue(index), max.get());
+        }
+        return 0;
+    }
+
+    /**
+     * @return - the number of latencies and their percentiles, in microseconds.
+     */
+    @Override
+    public String toString() {
+        long[] snapshot = new long[BUCKETS];
+        long count = 0;
+        for (int index = 0; index < BUCKETS; index++) count += snapshot[index] = counts.get(index);
+        if (count == 0) return "none";
+        StringBuilder text = new StringBuilder().append(count);
+        for (double percentile : PERCENTILES)
+            text.append(format(", p%s %.1f us", percentile % 1 == 0 ? Integer.toString((int) percentile)
+                    : Double.toString(percentile), percentile(snapshot, count, percentile) / 1e3));
+        return text.append(format(", max %.1f us", max.get() / 1e3)).toString();
+    }
+}
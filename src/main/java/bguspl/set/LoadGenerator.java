@@ -0,0 +1,269 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Plays many remote players against a game server (see GameServer), to measure the round trip of a claim: from the key
+ * press that places a player's third token to the verdict on the claim (the score the server sends after the dealer
+ * checked it), and the bytes the server sends each player. The players press random slots, as fast as the game lets
+ * them.
+ */
+public class LoadGenerator {
+
+    /**
+     * The game ignores presses on empty slots and presses of busy players: a press that is not answered in time is
+     * given up.
+     */
+    private static final long PRESS_TIMEOUT_NANOS = TimeUnit.MILLISECONDS.toNanos(200);
+
+    /**
+     * The dealer drops claims whose cards were taken meanwhile without a verdict.
+     */
+    private static final long CLAIM_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    private final class Client implements WireProtocol.Listener {
+        final SocketChannel channel;
+        final WireProtocol.Reader reader = new WireProtocol.Reader(this);
+        ByteBuffer in = ByteBuffer.allocateDirect(64 * 1024);
+        final ByteBuffer out = ByteBuffer.allocateDirect(2 * WireProtocol.INPUT_FRAME);
+        boolean connected;
+        int pressedSlot = -1;
+        long pressedAt;
+        long claimedAt;
+        long frozenUntil;
+        boolean over;
+
+        Client(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        int player() {
+            return reader.player();
+        }
+
+        int tokens() {
+            int tokens = 0;
+            for (int slot = 0; slot < reader.state().tableSize; slot++)
+                if (reader.state().hasToken(slot, player())) tokens++;
+            return tokens;
+        }
+
+        @Override
+        public void snapshot(GameState state) {
+            snapshots++;
+            pressedSlot = -1;
+            over = state.isOver();
+        }
+
+        @Override
+        public void operation(GameState state, int operation, int a, int b) {
+            switch (operation) {
+                case WireProtocol.TOKEN_PLACED:
+                    if (b != player()) break;
+                    if (tokens() == 3) claimedAt = a == pressedSlot ? pressedAt : now;
+                    if (a == pressedSlot) pressedSlot = -1;
+                    break;
+                case WireProtocol.TOKEN_REMOVED:
+                    if (b == player() && a == pressedSlot) pressedSlot = -1;
+                    break;
+                case WireProtocol.SLOT_CLEARED:
+                    if (a == pressedSlot) pressedSlot = -1;
+                    break;
+                case WireProtocol.FREEZE:
+                    if (a == player()) frozenUntil = b > 0 ? now + TimeUnit.MILLISECONDS.toNanos(b) : 0;
+                    break;
+                case WireProtocol.SCORE:
+                    if (a == player() && claimedAt != 0) {
+                        if (claims == roundTrips.length) roundTrips = Arrays.copyOf(roundTrips, claims * 2);
+                        roundTrips[claims++] = now - claimedAt;
+                        claimedAt = 0;
+                    }
+                    break;
+                case WireProtocol.GAME_OVER:
+                    over = true;
+                    break;
+            }
+        }
+    }
+
+    private final Random random = new Random(0);
+    private long[] roundTrips = new long[1024];
+    private int claims;
+    private int lostClaims;
+    private long presses;
+    private long bytesReceived;
+    private long snapshots;
+
+    /**
+     * The time the messages being read arrived.
+     */
+    private long now;
+
+    /**
+     * The load generator's main function.
+     *
+     * @param args - the server host (default localhost), port (default 7777), the number of players (default 100) and
+     *             the seconds to play (default 30).
+     */
+    public static void main(String[] args) throws IOException {
+        String host = args.length > 0 ? args[0] : "localhost";
+        int port = args.length > 1 ? Integer.parseInt(args[1]) : 7777;
+        int players = args.length > 2 ? Integer.parseInt(args[2]) : 100;
+        int seconds = args.length > 3 ? Integer.parseInt(args[3]) : 30;
+        new LoadGenerator().run(new InetSocketAddress(host, port), players, seconds);
+    }
+
+    private void run(InetSocketAddress address, int players, int seconds) throws IOException {
+        Selector selector = Selector.open();
+        List<Client> clients = new ArrayList<>(players);
+        for (int i = 0; i < players; i++) {
+            SocketChannel channel = SocketChannel.open();
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Client client = new Client(channel);
+            channel.connect(address);
+            channel.register(selector, SelectionKey.OP_CONNECT, client);
+            clients.add(client);
+        }
+
+        long start = System.nanoTime();
+        long end = start + TimeUnit.SECONDS.toNanos(seconds);
+        int playing = players;
+        while (System.nanoTime() < end && playing > 0) {
+            selector.select(1);
+            Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+            while (keys.hasNext()) {
+                SelectionKey key = keys.next();
+                keys.remove();
+                Client client = (Client) key.attachment();
+                try {
+                    if (key.isConnectable() && client.channel.finishConnect()) {
+                        client.connected = true;
+                        key.interestOps(SelectionKey.OP_READ);
+                        send(client, WireProtocol.HELLO, WireProtocol.VERSION, 0);
+                    } else if (key.isReadable() && !read(client)) {
+                        key.cancel();
+                        client.channel.close();
+                        client.over = true;
+                        playing--;
+                    }
+                } catch (IOException e) {
+                    key.cancel();
+                    client.channel.close();
+                    client.over = true;
+                    playing--;
+                }
+            }
+            long now = System.nanoTime();
+            for (Client client : clients)
+                if (client.connected && !client.over) act(client, now);
+        }
+        long elapsed = System.nanoTime() - start;
+        for (Client client : clients) client.channel.close();
+        selector.close();
+
+        int seated = 0;
+        for (Client client : clients) if (client.player() >= 0) seated++;
+        System.out.printf("%d of %d players seated, %d presses, %d claims (%.1f claims/sec), %d claims without verdict%n",
+                seated, players, presses, claims, claims * 1e9 / elapsed, lostClaims);
+        System.out.printf("received %d bytes (%.0f bytes/sec per player), %d snapshots%n",
+                bytesReceived, bytesReceived * 1e9 / elapsed / Math.max(1, seated), snapshots);
+        if (claims > 0) {
+            long[] sorted = Arrays.copyOf(roundTrips, claims);
+            Arrays.sort(sorted);
+            System.out.printf("claim round trip: p50 %.2f ms, p90 %.2f ms, p99 %.2f ms, max %.2f ms%n",
+                    percentile(sorted, 50) / 1e6, percentile(sorted, 90) / 1e6, percentile(sorted, 99) / 1e6,
+                    sorted[sorted.length - 1] / 1e6);
+        }
+    }
+
+    private static long percentile(long[] sorted, int percent) {
+        return sorted[Math.min(sorted.length - 1, sorted.length * percent / 100)];
+    }
+
+    /**
+     * Reads and handles the messages the server sent to a client.
+     *
+     * @return - false iff the server closed the connection.
+     */
+    private boolean read(Client client) throws IOException {
+        int read = client.channel.read(client.in);
+        if (read < 0) return false;
+        bytesReceived += read;
+        now = System.nanoTime();
+        ByteBuffer in = client.in;
+        in.flip();
+        client.reader.read(in);
+        in.compact();
+        if (!in.hasRemaining()) { // a message larger than the buffer
+            client.in = ByteBuffer.allocateDirect(in.capacity() * 2);
+            in.flip();
+            client.in.put(in);
+        }
+        return true;
+    }
+
+    /**
+     * Presses a slot for a client, if it may play now.
+     */
+    private void act(Client client, long now) {
+        if (client.player() < 0 || client.reader.state() == null) return;
+        if (client.claimedAt != 0) {
+            if (now - client.claimedAt < CLAIM_TIMEOUT_NANOS) return;
+            client.claimedAt = 0;
+            lostClaims++;
+        }
+        if (now < client.frozenUntil) return;
+        if (client.pressedSlot >= 0 && now - client.pressedAt < PRESS_TIMEOUT_NANOS) return;
+
+        GameState state = client.reader.state();
+        int slot;
+        if (client.tokens() == 3) { // a claim that was penalized: take a token back
+            slot = 0;
+            while (!state.hasToken(slot, client.player())) slot++;
+        } else {
+            int free = 0;
+            for (slot = 0; slot < state.tableSize; slot++)
+                if (state.card(slot) != GameState.NO_CARD && !state.hasToken(slot, client.player())) free++;
+            if (free == 0) return; // the table is being dealt
+            do {
+                slot = random.nextInt(state.tableSize);
+            } while (state.card(slot) == GameState.NO_CARD || state.hasToken(slot, client.player()));
+        }
+
+        if (!send(client, WireProtocol.PRESS, 0, slot)) return;
+        client.pressedSlot = slot;
+        client.pressedAt = now;
+        presses++;
+    }
+
+    /**
+     * Sends an input frame.
+     *
+     * @return - false iff the connection failed.
+     */
+    private static boolean send(Client client, int type, int argument, int slot) {
+        client.out.clear();
+        WireProtocol.putInput(client.out, type, argument, slot);
+        client.out.flip();
+        try {
+            client.channel.write(client.out);
+            return true;
+        } catch (IOException e) {
+            client.over = true;
+            return false;
+        }
+    }
+}
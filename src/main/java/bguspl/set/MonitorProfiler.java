@@ -0,0 +1,184 @@
+package bguspl.set;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadInfo;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.lang.String.format;
+
+/**
+ * Measures the coordination of the game threads on the monitors of the dealer and the players (see the ProfileMonitors
+ * configuration property): how often entering a monitor blocks and for how long, how often and how long threads wait
+ * on it (or park for what it guards), how many of their wakeups are spurious (the thread goes back to waiting for the
+ * same condition) and how many notifications it gets. The report is logged at the end of the game.
+ * <p>
+ * A thread blocked entering a monitor if the JVM's count of its blocks went up meanwhile. Reading that count costs
+ * about a microsecond, so when the profiler is disabled its methods return at once and measure nothing.
+ */
+public class MonitorProfiler {
+
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    /**
+     * The JVM's count of blocks of the current thread, before it entered a monitor.
+     */
+    private static final ThreadLocal<long[]> blocksBefore = ThreadLocal.withInitial(() -> new long[1]);
+
+    /**
+     * The measures of a monitor.
+     */
+    public class Monitor {
+
+        public final String name;
+
+        private final LongAdder entries = new LongAdder();
+        private final LongAdder blocks = new LongAdder();
+        private final LongAdder blockedNanos = new LongAdder();
+        private final LongAdder waits = new LongAdder();
+        private final LongAdder waitedNanos = new LongAdder();
+        private final LongAdder spuriousWakeups = new LongAdder();
+        private final LongAdder notifications = new LongAdder();
+
+        private Monitor(String name) {
+            this.name = name;
+        }
+
+        /**
+         * Called right before entering the monitor.
+         *
+         * @return - the value to pass to entered, once in the monitor.
+         */
+        public long entering() {
+            if (!enabled) return 0;
+            blocksBefore.get()[0] = blockedCount();
+            return System.nanoTime();
+        }
+
+        /**
+         * Called first thing in the monitor.
+         */
+        public void entered(long entering) {
+            if (!enabled) return;
+            long nanos = System.nanoTime() - entering;
+            entries.increment();
+            if (blockedCount() > blocksBefore.get()[0]) {
+                blocks.increment();
+                blockedNanos.add(nanos);
+            }
+        }
+
+        /**
+         * Called in the monitor right before waiting on it.
+         *
+         * @return - the value to pass to woken.
+         */
+        public long waiting() {
+            return enabled ? System.nanoTime() : 0;
+        }
+
+        /**
+         * Called in the monitor right after waiting on it.
+         *
+         * @param spurious - true iff the thread goes back to waiting (what it waits for did not happen).
+         */
+        public void woken(long waiting, boolean spurious) {
+            if (!enabled) return;
+            waits.increment();
+            waitedNanos.add(System.nanoTime() - waiting);
+            if (spurious) spuriousWakeups.increment();
+        }
+
+        /**
+         * Called when notifying the monitor.
+         */
+        public void notified() {
+            if (enabled) notifications.increment();
+        }
+
+        private void addTo(long[] totals) {
+            totals[0] += entries.sum();
+            totals[1] += blocks.sum();
+            totals[2] += blockedNanos.sum();
+            totals[3] += waits.sum();
+            totals[4] += waitedNanos.sum();
+            totals[5] += spuriousWakeups.sum();
+            totals[6] += notifications.sum();
+        }
+    }
+
+    private final boolean enabled;
+    private final List<Monitor> monitors = new ArrayList<>();
+
+    /**
+     * @param enabled - false for a profiler that measures nothing.
+     */
+    public MonitorProfiler(boolean enabled) {
+        this.enabled = enabled;
+    }
+
+    /**
+     * @return - true iff the profiler measures.
+     */
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * @param name - the name of the monitor in the report (monitors of a kind are named kind-id, e.g. player-3).
+     * @return - the measures of a new monitor.
+     */
+    public synchronized Monitor monitor(String name) {
+        Monitor monitor = new Monitor(name);
+        monitors.add(monitor);
+        return monitor;
+    }
+
+    private static long blockedCount() {
+        ThreadInfo info = threadBean.getThreadInfo(Thread.currentThread().getId());
+        return info != null ? info.getBlockedCount() : 0;
+    }
+
+    /**
+     * @return - the measures of the monitors, a line per kind of monitor (e.g. all the players) followed by a line
+     * per monitor.
+     */
+    public synchronized List<String> report() {
+        List<String> lines = new ArrayList<>();
+        List<String> kinds = new ArrayList<>();
+        for (Monitor monitor : monitors) {
+            String kind = monitor.name.replaceFirst("-\\d+$", "");
+            if (!kinds.contains(kind)) kinds.add(kind);
+        }
+        for (String kind : kinds) {
+            long[] totals = new long[7];
+            int count = 0;
+            for (Monitor monitor : monitors)
+                if (monitor.name.replaceFirst("-\\d+$", "").equals(kind)) {
+                    monitor.addTo(totals);
+                    count++;
+                }
+            lines.add(line(count == 1 ? kind : kind + " (" + count + " monitors)", totals));
+        }
+        for (Monitor monitor : monitors) {
+            long[] totals = new long[7];
+            monitor.addTo(totals);
+            lines.add(line(monitor.name, totals));
+        }
+        return lines;
+    }
+
+    private static String line(String name, long[] totals) {
+        return format("%s: %d entries, %d blocked (%.1f%%, %.1f us each), %d waits (%.1f ms in all), "
+                        + "%d spurious wakeups (%.1f%%), %d notifications",
+                name, totals[0], totals[1], percent(totals[1], totals[0]),
+                totals[1] == 0 ? 0 : totals[2] / 1e3 / totals[1], totals[3], totals[4] / 1e6,
+                totals[5], percent(totals[5], totals[3]), totals[6]);
+    }
+
+    private static double percent(long part, long whole) {
+        return whole == 0 ? 0 : 100.0 * part / whole;
+    }
+}
@@ -0,0 +1,114 @@
+package bguspl.set;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A bounded, lock-free, multi-producer single-consumer ring of operations on the game state, each packed into a long
+ * (see pack). The producers are the game threads (the dealer and the players) and the consumer is the thread that
+ * applies the operations (the game server or the spectator hub). Offering only claims a pre-allocated entry, so it
+ * never allocates and never blocks: when the ring is full the operation is dropped and counted.
+ */
+class OperationRing {
+
+    /**
+     * The value returned by poll when the ring is empty (never a packed operation, whose code is positive).
+     */
+    static final long EMPTY = 0;
+
+    private final long[] operations;
+
+    /**
+     * The sequence of each entry, which tells who owns it: sequence == s means it is free for the producer of
+     * sequence s, sequence == s + 1 means it holds the operation of sequence s for the consumer.
+     */
+    private final AtomicLongArray sequences;
+
+    /**
+     * The sequence of the next entry to claim (producers).
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * The sequence of the next entry to read (used by the consumer only).
+     */
+    private long head;
+
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * @param capacity - the maximal number of pending operations (a power of two).
+     */
+    OperationRing(int capacity) {
+        if (capacity <= 0 || Integer.bitCount(capacity) != 1)
+            throw new IllegalArgumentException("capacity must be a positive power of two: " + capacity);
+        operations = new long[capacity];
+        sequences = new AtomicLongArray(capacity);
+        for (int i = 0; i < capacity; i++) sequences.set(i, i);
+    }
+
+    /**
+     * @return - an operation and its arguments packed as (operation << 56 | a << 32 | b), a keeps its low 24 bits.
+     */
+    static long pack(int operation, int a, int b) {
+        return (long) operation << 56 | (long) (a & 0xFFFFFF) << 32 | (b & 0xFFFFFFFFL);
+    }
+
+    static int operation(long packed) {
+        return (int) (packed >>> 56);
+    }
+
+    static int a(long packed) {
+        return (int) (packed >>> 32) & 0xFFFFFF;
+    }
+
+    static int b(long packed) {
+        return (int) packed;
+    }
+
+    /**
+     * Adds an operation to the ring. Any thread, never blocks.
+     *
+     * @param packed - the packed operation (see pack).
+     * @return - true iff the operation was queued, false if the ring was full and it was dropped.
+     */
+    boolean offer(long packed) {
+        int mask = operations.length - 1;
+        while (true) {
+            long sequence = tail.get();
+            int index = (int) sequence & mask;
+            long entrySequence = sequences.get(index);
+            if (entrySequence < sequence) { // still holds an operation of the previous lap: the ring is full
+                dropped.incrementAndGet();
+                return false;
+            }
+            if (entrySequence == sequence && tail.compareAndSet(sequence, sequence + 1)) {
+                operations[index] = packed;
+                sequences.lazySet(index, sequence + 1); // publishes the operation to the consumer
+                return true;
+            }
+            // otherwise another producer claimed this sequence first, try the next one
+        }
+    }
+
+    /**
+     * Removes the oldest operation from the ring. Consumer side only.
+     *
+     * @return - the oldest packed operation or EMPTY if there is none (or its producer has not finished writing it).
+     */
+    long poll() {
+        int index = (int) head & (operations.length - 1);
+        if (sequences.get(index) != head + 1) return EMPTY;
+        long packed = operations[index];
+        sequences.lazySet(index, head + operations.length); // frees the entry for the producer of the next lap
+        head++;
+        return packed;
+    }
+
+    /**
+     * @return - the number of operations dropped because the ring was full.
+     */
+    long dropped() {
+        return dropped.get();
+    }
+}
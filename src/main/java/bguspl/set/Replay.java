@@ -0,0 +1,88 @@
+package bguspl.set;
+
+import bguspl.set.ex.Player;
+import bguspl.set.ex.ReplayEngine;
+import bguspl.set.ex.Table;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.logging.Handler;
+import java.util.logging.Logger;
+
+/**
+ * Replays a game recorded in a game journal (see the JournalFile configuration property).
+ */
+public class Replay {
+
+    /**
+     * The replay's main function.
+     *
+     * @param args - the journal file name, the mode: "realtime" (default), "max" (as fast as possible), "verify" (check
+     *             the recording only, without a table) or a speed factor (e.g. "4"), and the event to start from
+     *             (default 0).
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.out.println("usage: Replay <journal file> [realtime|max|verify|<speed>] [start event]");
+            return;
+        }
+        String mode = args.length > 1 ? args[1] : "realtime";
+        int start = args.length > 2 ? Integer.parseInt(args[2]) : 0;
+
+        Logger logger = Main.initLogger();
+        long readStart = System.nanoTime();
+        GameJournal.Recording recording = GameJournal.read(args[0]);
+        long readNanos = System.nanoTime() - readStart;
+        if (recording.size == 0 || recording.type(0) != GameJournal.GAME_START) {
+            System.out.println("the journal does not hold a whole game (first sequence " + recording.firstSequence + ")");
+            return;
+        }
+
+        // the configuration of the recorded game: the recorded players are all shown as computer players
+        Properties properties = Config.loadProperties("config.properties", logger);
+        properties.setProperty("HumanPlayers", "0");
+        properties.setProperty("ComputerPlayers", Integer.toString(recording.argument(0, 0)));
+        properties.setProperty("RemotePlayers", "0");
+        properties.setProperty("TableDelaySeconds", "0");
+        properties.setProperty("JournalFile", "");
+        if (mode.equals("max")) properties.setProperty("LogLevel", "OFF"); // the log would be the bottleneck
+        Config config = new Config(logger, properties);
+        Util util = new UtilImpl(config);
+
+        boolean show = !mode.equals("verify") && !mode.equals("max") && !config.headless;
+        UserInterface ui = null;
+        if (show) try {
+            ui = new UserInterfaceSwing(logger, config, new Player[config.players], "Set Card Game - replay of " + args[0]);
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            logger.severe("error creating swing user interface: " + e.getMessage());
+        }
+        Env env = new Env(logger, config, new UserInterfaceDecorator(logger, util, ui), util);
+
+        long verifyStart = System.nanoTime();
+        ReplayEngine engine = new ReplayEngine(env, new Table(env), recording);
+        long verifyNanos = System.nanoTime() - verifyStart;
+        System.out.printf("%d events read in %.1f ms, verified in %.1f ms (%.1f million events/sec)%n",
+                recording.size, readNanos / 1e6, verifyNanos / 1e6, recording.size * 1e3 / verifyNanos);
+
+        if (!mode.equals("verify")) {
+            double speed = mode.equals("max") ? 0 : mode.equals("realtime") ? 1 : Double.parseDouble(mode);
+            if (start > 0) engine.seek(start);
+            long playStart = System.nanoTime();
+            engine.play(engine.size(), speed);
+            long playNanos = System.nanoTime() - playStart;
+            System.out.printf("%d events replayed in %.1f ms (%.2f million events/sec)%n",
+                    engine.size() - start, playNanos / 1e6, (engine.size() - start) * 1e3 / playNanos);
+            if (show && config.endGamePauseMillies > 0) try {
+                Thread.sleep(config.endGamePauseMillies);
+            } catch (InterruptedException ignored) {}
+            env.ui.dispose();
+        }
+
+        System.out.println("scores: " + Arrays.toString(engine.getScores()));
+        System.out.println(engine.getViolationCount() + " violations");
+        engine.getViolations().forEach(System.out::println);
+        AsyncLog.drain(logger);
+        for (Handler h : logger.getHandlers()) h.flush();
+    }
+}
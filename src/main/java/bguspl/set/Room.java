@@ -0,0 +1,219 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+import bguspl.set.ex.Player;
+import bguspl.set.ex.Table;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+
+/**
+ * A single game (a table, its dealer and its players) with its own environment.
+ * A process may host any number of rooms side by side: nothing of a game is kept in static state, the only things
+ * rooms share are the workers of their executors and the caches of card features and images.
+ */
+public class Room implements Runnable {
+
+    /**
+     * The name of the room (used for thread names and reports).
+     */
+    public final String name;
+
+    private final Env env;
+    private final Dealer dealer;
+
+    /**
+     * The server of the remote players (null if there are none).
+     */
+    private final GameServer server;
+
+    /**
+     * The hub of the spectators (null if there are none).
+     */
+    private final SpectatorHub spectators;
+
+    /**
+     * True iff the room owns the process (closing its window exits the process).
+     */
+    private final boolean standalone;
+
+    /**
+     * True iff the game window was closed by the user.
+     */
+    private volatile boolean xButtonPressed = false;
+
+    /**
+     * Counted down when the room is done running.
+     */
+    private final CountDownLatch ended = new CountDownLatch(1);
+
+    private volatile long wallMillis;
+
+    /**
+     * Creates all the game entities of the room (and its window, unless the configuration is headless).
+     *
+     * @param name       - the name of the room.
+     * @param logger     - the logger of the room.
+     * @param config     - the configuration of the game.
+     * @param executor   - the executor to run the threads of the game on.
+     * @param standalone - true iff the room is the only game of the process.
+     */
+    public Room(String name, Logger logger, Config config, GameExecutor executor, boolean standalone) {
+        this.name = name;
+        this.standalone = standalone;
+        Util util = new UtilImpl(config);
+
+        Player[] players = new Player[config.players];
+        List<UserInterface> uis = new ArrayList<>();
+        String suffix = standalone ? "" : "-" + name; // of the room's files, so the rooms of a host do not share them
+        if (!config.headless) try {
+            uis.add(new UserInterfaceSwing(logger, config, players, this));
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            logger.severe("error creating swing user interface: " + e.getMessage());
+            if (System.console() != null) { // e.g. over SSH
+                logger.severe("will show the game on the terminal");
+                uis.add(new UserInterfaceTerminal(logger, config, util, System.out));
+            } else logger.severe("will try to run without user interface");
+            if (config.humanPlayers > 0)
+                logger.severe("warning: running with human players with no keyboard input");
+        }
+        GameServer server = null;
+        if (config.remotePlayers > 0) try {
+            server = new GameServer(logger, config, players);
+            uis.add(server);
+        } catch (IOException e) {
+            logger.severe("error opening the game server: " + e + ". The remote players will not play");
+        }
+        this.server = server;
+        SpectatorHub spectators = null;
+        if (config.spectators > 0) try {
+            spectators = new SpectatorHub(logger, config);
+            uis.add(spectators);
+        } catch (IOException e) {
+            logger.severe("error opening the spectator hub: " + e + ". The game will not be broadcast");
+        }
+        this.spectators = spectators;
+        boolean shared = false;
+        if (!config.sharedStateFile.isEmpty()) try {
+            uis.add(new SharedStateUserInterface(logger, config, suffix));
+            shared = true;
+        } catch (IOException e) {
+            logger.severe("error creating the shared state file: " + e + ". The game will not be shown to viewers");
+        }
+        UserInterface ui = new UserInterfaceDecorator(logger, util, UserInterfaceGroup.of(uis));
+
+        // remote players play and viewers watch in real time, the virtual clock would run ahead of them
+        Clock clock = config.headless && server == null && !shared ? new VirtualClock() : new SystemClock();
+        if (config.headless)
+            logger.severe("running " + name + " headless on "
+                    + (clock instanceof VirtualClock ? "a virtual" : "the system") + " clock");
+        GameJournal journal = GameJournal.open(config, suffix, logger);
+        env = new Env(logger, config, ui, util, clock, executor, journal);
+
+        Table table = new Table(env);
+        dealer = new Dealer(env, table, players);
+        for (int i = 0; i < players.length; i++)
+            players[i] = new Player(env, dealer, table, i, i < env.config.humanPlayers + env.config.remotePlayers);
+        if (config.jmx) env.metrics.register(logger, name, dealer, table, players, util);
+    }
+
+    /**
+     * Runs the game to its end (or until the room is closed) and releases its window.
+     */
+    @Override
+    public void run() {
+        long start = System.nanoTime();
+        if (server != null) env.executor.start("server", server);
+        if (spectators != null) env.executor.start("spectators", spectators);
+        Future<?> dealerTask = env.executor.start("dealer", dealer);
+        try {
+            dealerTask.get();
+            if (!xButtonPressed && env.config.endGamePauseMillies > 0) Thread.sleep(env.config.endGamePauseMillies);
+        } catch (InterruptedException ignored) {
+            dealer.terminate();
+        } catch (ExecutionException e) {
+            env.logger.severe(name + " dealer failed: " + e.getCause());
+        } finally {
+            if (!xButtonPressed) env.ui.dispose();
+            if (server != null) server.close();
+            if (spectators != null) spectators.close();
+            env.journal.flush();
+            for (String latencies : env.metrics.latencies(-1))
+                env.logger.info(name + " claim latencies, " + latencies);
+            env.metrics.unregister(env.logger);
+            if (env.monitors.isEnabled())
+                for (String monitor : env.monitors.report()) env.logger.severe(name + " monitor " + monitor);
+            wallMillis = (System.nanoTime() - start) / 1_000_000;
+            ended.countDown();
+        }
+    }
+
+    /**
+     * Called when the game window is closed by the user: ends the game and waits for the room to be done.
+     */
+    public void xButtonPressed() throws InterruptedException {
+        env.logger.severe("exit button pressed in " + name);
+        xButtonPressed = true;
+        dealer.terminate();
+        ended.await();
+    }
+
+    /**
+     * Ends the game without waiting.
+     */
+    public void terminate() {
+        dealer.terminate();
+    }
+
+    /**
+     * Waits until the room is done running.
+     */
+    public void awaitEnd() throws InterruptedException {
+        ended.await();
+    }
+
+    /**
+     * @return - the dealer of the room's game.
+     */
+    public Dealer getDealer() {
+        return dealer;
+    }
+
+    /**
+     * @return - the hub of the spectators of the room's game (null if there are none).
+     */
+    public SpectatorHub getSpectators() {
+        return spectators;
+    }
+
+    /**
+     * @return - how long the room ran, in real time (known once the room is done).
+     */
+    public long getWallMillis() {
+        return wallMillis;
+    }
+
+    /**
+     * @return - true iff the room is the only game of the process.
+     */
+    public boolean isStandalone() {
+        return standalone;
+    }
+
+    /**
+     * @return - the resources used by the room so far (complete once the room is done).
+     */
+    public String report() {
+        GameExecutor executor = env.executor;
+        return format("%s: wall %d ms, cpu %.1f ms, allocated %d KB, %d threads (%d at most at once)",
+                name, wallMillis, executor.cpuNanos() / 1e6, executor.allocatedBytes() / 1024,
+                executor.tasksStarted(), executor.peakLiveTasks());
+    }
+}
@@ -0,0 +1,136 @@
+package bguspl.set;
+
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * The players ranked by score (highest first, then by id), kept up to date as scores change.
+ * Reading the top k players or the leaders costs O(log n + k) regardless of the number of players.
+ * <p>
+ * Updates take turns (they are rare, a score changes once per legal set). A read does not hold them off: it is checked
+ * afterwards against the updates that ran meanwhile, as it may have seen the updated player at both its ranks or at
+ * neither, and if one did it is repeated holding them off. So a reader sees every player exactly once, at the rank of
+ * its score before or after a concurrent update.
+ */
+public class ScoreIndex {
+
+    /**
+     * The ranking entries, each a player and a score packed into one key that sorts by descending score, then by id.
+     */
+    private final ConcurrentSkipListSet<Long> ranking = new ConcurrentSkipListSet<>();
+
+    private final AtomicIntegerArray scores;
+
+    /**
+     * Updates are written under its write lock, reads validate against it.
+     */
+    private final StampedLock lock = new StampedLock();
+
+    /**
+     * @param players - the number of players (all start with a score of 0).
+     */
+    public ScoreIndex(int players) {
+        scores = new AtomicIntegerArray(players);
+        for (int player = 0; player < players; player++)
+            ranking.add(key(player, 0));
+    }
+
+    private static long key(int player, int score) {
+        return (long) (Integer.MAX_VALUE - score) << 32 | player;
+    }
+
+    private static int player(long key) {
+        return (int) key;
+    }
+
+    private static int score(long key) {
+        return Integer.MAX_VALUE - (int) (key >>> 32);
+    }
+
+    /**
+     * Sets the score of a player.
+     *
+     * @param player - the player.
+     * @param score  - the new score (non-negative).
+     */
+    public void update(int player, int score) {
+        long stamp = lock.writeLock();
+        try {
+            int old = scores.get(player);
+            if (old == score) return;
+            ranking.add(key(player, score));
+            ranking.remove(key(player, old));
+            scores.set(player, score);
+        } finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * @return - the current score of a player.
+     */
+    public int score(int player) {
+        return scores.get(player);
+    }
+
+    /**
+     * Fills an array with the highest ranked players.
+     *
+     * @param players - the array to fill (its length is the number of players asked for).
+     * @return - the number of players filled in (fewer if there are fewer players).
+     */
+    public int top(int[] players) {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            int count = fill(players);
+            if (lock.validate(stamp)) return count;
+        }
+        stamp = lock.readLock();
+        try {
+            return fill(players);
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private int fill(int[] players) {
+        int count = 0;
+        for (Long key : ranking) {
+            if (count == players.length) break;
+            players[count++] = player(key);
+        }
+        return count;
+    }
+
+    /**
+     * @return - the ids of the players with the highest score, in increasing order.
+     */
+    public int[] leaders() {
+        long stamp = lock.tryOptimisticRead();
+        if (stamp != 0) {
+            int[] leaders = findLeaders();
+            if (lock.validate(stamp)) return leaders;
+        }
+        stamp = lock.readLock();
+        try {
+            return findLeaders();
+        } finally {
+            lock.unlockRead(stamp);
+        }
+    }
+
+    private int[] findLeaders() {
+        int[] leaders = new int[4];
+        int count = 0;
+        int best = -1;
+        for (Long key : ranking) {
+            if (best < 0) best = score(key);
+            else if (score(key) < best) break;
+            if (count == leaders.length) leaders = Arrays.copyOf(leaders, count * 2);
+            leaders[count++] = player(key);
+        }
+        return Arrays.copyOf(leaders, count);
+    }
+}
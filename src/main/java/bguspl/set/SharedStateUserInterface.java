@@ -0,0 +1,227 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Logger;
+
+/**
+ * Publishes the state of a game (cards, tokens, scores, freezes, countdown and winners) to a memory-mapped file (see
+ * the SharedStateFile configuration property), for a viewer in another process to show (see StateViewer). The game
+ * threads only write to memory: they never wait for the viewer, and the viewer may crash or restart at any time.
+ * <p>
+ * The file is guarded by a seqlock: a sequence number that is odd while the state is being written. A reader reads the
+ * sequence number, the state and the sequence number again, and retries if they differ (or are odd).
+ * <p>
+ * Layout (big-endian): magic (4), table size (4), players (4), unused (4), session (8, new for every game), sequence
+ * (8), countdown in milliseconds (8), flags (4), unused (4), then the cards by slot (4 each, -1 for none), the tokens by
+ * slot (a bit per player, in words of 8), the scores (4 each), the freezes in milliseconds (8 each) and the winners (a
+ * bit per player, in words of 8). The magic is written last, once the rest of the header is valid.
+ */
+public class SharedStateUserInterface implements UserInterface {
+
+    static final int MAGIC = 0x53455431; // "SET1"
+
+    static final int TABLE_SIZE = 4;
+    static final int PLAYERS = 8;
+    static final int SESSION = 16;
+    static final int SEQUENCE = 24;
+    static final int COUNTDOWN = 32;
+    static final int FLAGS = 40;
+    static final int CARDS = 48;
+
+    /**
+     * Flags.
+     */
+    static final int WARN = 1;      // the countdown is in its warning time
+    static final int ELAPSED = 2;   // the countdown is the time elapsed (rather than left)
+    static final int OVER = 4;      // the winners were announced
+    static final int CLOSED = 8;    // the game no longer publishes its state
+
+    /**
+     * The offsets of the state arrays in a file of a table size and a number of players, and the size of the file.
+     */
+    static final class Layout {
+        final int tableSize;
+        final int players;
+        final int tokenWords;
+        final int tokens;
+        final int scores;
+        final int freezes;
+        final int winners;
+        final int size;
+
+        Layout(int tableSize, int players) {
+            this.tableSize = tableSize;
+            this.players = players;
+            tokenWords = (players + Long.SIZE - 1) / Long.SIZE;
+            tokens = CARDS + 4 * tableSize;
+            scores = tokens + 8 * tableSize * tokenWords;
+            freezes = scores + 4 * players;
+            winners = freezes + 8 * players;
+            size = winners + 8 * tokenWords;
+        }
+
+        int tokenWord(int slot, int player) {
+            return tokens + 8 * (slot * tokenWords + player / Long.SIZE);
+        }
+    }
+
+    /**
+     * Orders the accesses to the file around a call to fence: a volatile write followed by a volatile read keeps the
+     * accesses before it from moving after it and the other way around.
+     */
+    private static volatile int fence;
+
+    static void fence() {
+        fence = 0;
+        int ignored = fence;
+    }
+
+    private final Layout layout;
+    private final MappedByteBuffer state;
+
+    /**
+     * Creates (or replaces) the shared state file of a game.
+     *
+     * @param suffix - appended to the name of the file (e.g. the room of the game, "" for a standalone game).
+     */
+    public SharedStateUserInterface(Logger logger, Config config, String suffix) throws IOException {
+        layout = new Layout(config.tableSize, config.players);
+        Path path = Paths.get(config.sharedStateFile + suffix);
+        try {
+            Files.deleteIfExists(path); // a viewer keeps its mapping of the previous game's file, rather than losing it
+        } catch (IOException e) {
+            logger.warning("reusing the shared state file " + path + ": " + e);
+        }
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE)) {
+            state = channel.map(FileChannel.MapMode.READ_WRITE, 0, layout.size);
+        }
+        for (int offset = 0; offset + 8 <= layout.size; offset += 8) state.putLong(offset, 0);
+        state.putInt(TABLE_SIZE, layout.tableSize);
+        state.putInt(PLAYERS, layout.players);
+        state.putLong(SESSION, System.currentTimeMillis() << 16 ^ System.nanoTime() & 0xFFFF);
+        for (int slot = 0; slot < layout.tableSize; slot++) state.putInt(CARDS + 4 * slot, -1);
+        fence();
+        state.putInt(0, MAGIC);
+        logger.info("publishing the game state to " + path);
+    }
+
+    /**
+     * Starts changing the state (called by the writer holding the lock).
+     */
+    private void begin() {
+        state.putLong(SEQUENCE, state.getLong(SEQUENCE) + 1);
+        fence();
+    }
+
+    /**
+     * Ends changing the state.
+     */
+    private void end() {
+        fence();
+        state.putLong(SEQUENCE, state.getLong(SEQUENCE) + 1);
+    }
+
+    private void setFlags(int clear, int set) {
+        state.putInt(FLAGS, state.getInt(FLAGS) & ~clear | set);
+    }
+
+    @Override
+    public synchronized void placeCard(int card, int slot) {
+        begin();
+        state.putInt(CARDS + 4 * slot, card);
+        end();
+    }
+
+    @Override
+    public synchronized void removeCard(int slot) {
+        begin();
+        state.putInt(CARDS + 4 * slot, -1);
+        end();
+    }
+
+    @Override
+    public synchronized void placeToken(int player, int slot) {
+        begin();
+        int word = layout.tokenWord(slot, player);
+        state.putLong(word, state.getLong(word) | 1L << (player % Long.SIZE));
+        end();
+    }
+
+    @Override
+    public synchronized void removeTokens() {
+        begin();
+        for (int word = layout.tokens; word < layout.scores; word += 8) state.putLong(word, 0);
+        end();
+    }
+
+    @Override
+    public synchronized void removeTokens(int slot) {
+        begin();
+        for (int word = layout.tokenWord(slot, 0); word < layout.tokenWord(slot + 1, 0); word += 8)
+            state.putLong(word, 0);
+        end();
+    }
+
+    @Override
+    public synchronized void removeToken(int player, int slot) {
+        begin();
+        int word = layout.tokenWord(slot, player);
+        state.putLong(word, state.getLong(word) & ~(1L << (player % Long.SIZE)));
+        end();
+    }
+
+    @Override
+    public synchronized void setCountdown(long millies, boolean warn) {
+        begin();
+        state.putLong(COUNTDOWN, millies);
+        setFlags(WARN | ELAPSED, warn ? WARN : 0);
+        end();
+    }
+
+    @Override
+    public synchronized void setElapsed(long millies) {
+        begin();
+        state.putLong(COUNTDOWN, millies);
+        setFlags(WARN, ELAPSED);
+        end();
+    }
+
+    @Override
+    public synchronized void setFreeze(int player, long millies) {
+        begin();
+        state.putLong(layout.freezes + 8 * player, millies);
+        end();
+    }
+
+    @Override
+    public synchronized void setScore(int player, int score) {
+        begin();
+        state.putInt(layout.scores + 4 * player, score);
+        end();
+    }
+
+    @Override
+    public synchronized void announceWinner(int[] players) {
+        begin();
+        for (int player : players) {
+            int word = layout.winners + 8 * (player / Long.SIZE);
+            state.putLong(word, state.getLong(word) | 1L << (player % Long.SIZE));
+        }
+        setFlags(0, OVER);
+        end();
+    }
+
+    @Override
+    public synchronized void dispose() {
+        begin();
+        setFlags(0, CLOSED);
+        end();
+    }
+}
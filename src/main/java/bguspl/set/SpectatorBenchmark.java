@@ -0,0 +1,134 @@
+package bguspl.set;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Handler;
+import java.util.logging.Logger;
+
+/**
+ * Plays the same headless game of computer players twice, once without spectators and once watched by many in-process
+ * spectators (see SpectatorHub), to show that the game threads do not pay for the spectators: the game's CPU time
+ * (its dealer, players and hub) should not grow with their number. Every spectator decodes all it reads into its own
+ * copy of the game state, which must match the others' at the end.
+ */
+public class SpectatorBenchmark {
+
+    /**
+     * A spectator: its subscription and its copy of the game state.
+     */
+    private static final class Spectator {
+        final SpectatorHub.Subscription subscription;
+        final WireProtocol.Reader reader = new WireProtocol.Reader(new WireProtocol.Listener() {});
+
+        Spectator(SpectatorHub.Subscription subscription) {
+            this.subscription = subscription;
+        }
+
+        /**
+         * Reads all the frames published so far.
+         *
+         * @return - true iff there were any.
+         */
+        boolean read() throws ProtocolException {
+            boolean read = false;
+            ByteBuffer frame;
+            while ((frame = subscription.poll()) != null) {
+                reader.read(frame);
+                read = true;
+            }
+            return read;
+        }
+    }
+
+    /**
+     * The benchmark's main function.
+     *
+     * @param args - the number of spectators (default 10000), the number of threads reading for them (default 2) and
+     *             the configuration file (default config.properties).
+     */
+    public static void main(String[] args) throws Exception {
+        int spectators = args.length > 0 ? Integer.parseInt(args[0]) : 10000;
+        int readers = args.length > 1 ? Integer.parseInt(args[1]) : 2;
+        String configFile = args.length > 2 ? args[2] : "config.properties";
+
+        Logger logger = Main.initLogger();
+        Properties properties = Config.loadProperties(configFile, logger);
+        properties.setProperty("LogLevel", "SEVERE");
+        properties.setProperty("Headless", "True");
+        int seats = Integer.parseInt(properties.getProperty("HumanPlayers", "2").trim())
+                + Integer.parseInt(properties.getProperty("RemotePlayers", "0").trim())
+                + Integer.parseInt(properties.getProperty("ComputerPlayers", "0").trim());
+        properties.setProperty("HumanPlayers", "0");
+        properties.setProperty("ComputerPlayers", Integer.toString(seats));
+        properties.setProperty("RemotePlayers", "0");
+        properties.setProperty("BotScheduleMode", "None");
+        properties.setProperty("EndGamePauseSeconds", "0");
+        properties.setProperty("Spectators", "1"); // the hub (the in-process spectators do not need its port)
+        properties.setProperty("SpectatorPort", "0");
+        if (properties.getProperty("Seed", "").trim().isEmpty()) properties.setProperty("Seed", "1");
+
+        GameHost host = new GameHost(logger);
+        try {
+            play(host, new Config(logger, properties), 0, readers);
+            play(host, new Config(logger, properties), spectators, readers);
+        } finally {
+            host.shutdown();
+            AsyncLog.drain(logger);
+            for (Handler h : logger.getHandlers()) h.flush();
+        }
+    }
+
+    private static void play(GameHost host, Config config, int count, int readers) throws Exception {
+        Room room = host.open(config);
+        List<Spectator> spectators = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) spectators.add(new Spectator(room.getSpectators().subscribe()));
+
+        List<Thread> threads = new ArrayList<>();
+        AtomicBoolean closed = new AtomicBoolean();
+        Exception[] failure = new Exception[1];
+        for (int t = 0; t < readers && count > 0; t++) {
+            List<Spectator> share = spectators.subList(t * count / readers, (t + 1) * count / readers);
+            Thread thread = new Thread(() -> {
+                try {
+                    boolean ended = false;
+                    while (!ended) {
+                        ended = closed.get(); // one more pass once the hub published its last frame
+                        boolean read = false;
+                        for (Spectator spectator : share) read |= spectator.read();
+                        if (!read && !ended) Thread.sleep(1);
+                    }
+                } catch (Exception e) {
+                    failure[0] = e;
+                }
+            }, "spectators-" + t);
+            thread.start();
+            threads.add(thread);
+        }
+        room.awaitEnd();
+        room.getSpectators().awaitClosed();
+        closed.set(true);
+        for (Thread thread : threads) thread.join();
+        if (failure[0] != null) throw failure[0];
+
+        long frames = 0;
+        long snapshots = 0;
+        int behind = 0;
+        GameState last = null;
+        for (Spectator spectator : spectators) {
+            frames += spectator.subscription.frames();
+            snapshots += spectator.subscription.snapshots();
+            GameState state = spectator.reader.state();
+            if (last != null && state.version() != last.version()) behind++;
+            last = state;
+        }
+        System.out.println(room.report() + ", " + room.getDealer().getSetsFound() + " sets");
+        if (count > 0)
+            System.out.printf("%d spectators on %d threads read %d frames and %d snapshots (%.1f snapshots each), "
+                            + "%d ended on another version than their neighbor, final version %d%n",
+                    count, readers, frames, snapshots, (double) snapshots / count, behind, last.version());
+    }
+}
@@ -0,0 +1,420 @@
+package bguspl.set;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.logging.Logger;
+
+/**
+ * Broadcasts a game to any number of spectators: in-process subscribers (see subscribe) and TCP clients (see the
+ * Spectators and SpectatorPort configuration properties). Spectators get the stream of the remote players (see
+ * WireProtocol), welcomed as no player.
+ * <p>
+ * The game threads only queue the user interface events of the game, whatever the number of spectators. The hub
+ * thread applies them to its game state and encodes them once into an immutable frame (a DELTA message), which it
+ * publishes to a ring of the latest frames. Every spectator has its own cursor over the ring and reads the frames
+ * themselves, never a copy. A spectator that falls behind the ring skips to the latest snapshot of the state (a
+ * SNAPSHOT message the hub encodes every so many frames) and goes on from the frames that follow it.
+ */
+public class SpectatorHub implements UserInterface, Runnable {
+
+    /**
+     * The frames kept in the ring, and every how many frames a snapshot is encoded (so the frames that follow the
+     * latest snapshot are always in the ring).
+     */
+    private static final int RING_FRAMES = 1024;
+    private static final int SNAPSHOT_INTERVAL = RING_FRAMES / 4;
+
+    /**
+     * The operations the game threads may queue before the hub thread applies them (more are dropped).
+     */
+    private static final int QUEUED_OPERATIONS = 1 << 14;
+
+    /**
+     * An encoded message, shared by all the spectators.
+     */
+    private static final class Frame {
+        /**
+         * The frame's sequence number (for a snapshot: the sequence number of the last frame it covers).
+         */
+        final long sequence;
+        final ByteBuffer bytes;
+
+        Frame(long sequence, ByteBuffer bytes) {
+            this.sequence = sequence;
+            this.bytes = bytes.asReadOnlyBuffer();
+        }
+    }
+
+    /**
+     * A spectator's cursor over the frames of the hub. Used by one thread at a time.
+     */
+    public final class Subscription {
+
+        private boolean welcomed;
+
+        /**
+         * The sequence number of the next frame (0 until the first snapshot).
+         */
+        private long cursor;
+
+        private long frames;
+        private long snapshots;
+
+        private Subscription() {}
+
+        /**
+         * @return - the next message for the spectator (a view of the shared frame), or null if there is none yet.
+         */
+        public ByteBuffer poll() {
+            if (!welcomed) {
+                welcomed = true;
+                return welcome.bytes.duplicate();
+            }
+            if (cursor > published) return null;
+            Frame frame = cursor > 0 ? ring[(int) (cursor % RING_FRAMES)] : null;
+            if (frame == null || frame.sequence != cursor) { // new, or lapped by the ring: skip to the latest snapshot
+                frame = snapshot;
+                snapshots++;
+            } else frames++;
+            cursor = frame.sequence + 1;
+            return frame.bytes.duplicate();
+        }
+
+        /**
+         * @return - the frames the spectator read, besides its snapshots.
+         */
+        public long frames() {
+            return frames;
+        }
+
+        /**
+         * @return - the snapshots the spectator read (its first one, and one whenever it fell behind).
+         */
+        public long snapshots() {
+            return snapshots;
+        }
+    }
+
+    /**
+     * A spectator connected over TCP, and the rest of the frame being sent to it.
+     */
+    private final class Connection {
+        final SocketChannel channel;
+        final Subscription subscription = new Subscription();
+        final ByteBuffer in = ByteBuffer.allocateDirect(64);
+        SelectionKey key;
+        ByteBuffer sending;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+    }
+
+    private final Logger logger;
+    private final int maxConnections;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final List<Connection> connections = new ArrayList<>();
+
+    /**
+     * The operations on the game state, queued by the game threads, and the number of dropped ones reported so far.
+     */
+    private final OperationRing operations = new OperationRing(QUEUED_OPERATIONS);
+    private long reportedDrops;
+    private final AtomicBoolean wakeupPending = new AtomicBoolean();
+
+    /**
+     * The game state and the buffer frames are encoded in. Used by the hub thread only.
+     */
+    private final GameState state;
+    private final ByteBuffer encoder;
+
+    /**
+     * The published frames: the ring (by sequence number), the sequence number of the latest frame and the latest
+     * snapshot. Written by the hub thread only.
+     */
+    private final Frame[] ring = new Frame[RING_FRAMES];
+    private volatile long published;
+    private volatile Frame snapshot;
+    private final Frame welcome;
+
+    private volatile boolean closed;
+    private final CountDownLatch done = new CountDownLatch(1);
+    private long accepted;
+    private long bytesSent;
+
+    /**
+     * Opens the spectators' port.
+     */
+    public SpectatorHub(Logger logger, Config config) throws IOException {
+        this.logger = logger;
+        maxConnections = config.spectators;
+        state = new GameState(config.tableSize, config.players, 4 * SNAPSHOT_INTERVAL);
+        encoder = ByteBuffer.allocate(2 * WireProtocol.snapshotSize(config.tableSize, config.players, config.players));
+
+        WireProtocol.putWelcome(encoder, -1, state);
+        welcome = new Frame(0, copy());
+        WireProtocol.putSnapshot(encoder, state);
+        snapshot = new Frame(0, copy());
+
+        selector = Selector.open();
+        serverChannel = ServerSocketChannel.open();
+        serverChannel.setOption(StandardSocketOptions.SO_REUSEADDR, true);
+        serverChannel.bind(new InetSocketAddress(config.spectatorPort), 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * @return - the port the hub listens on.
+     */
+    public int port() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    /**
+     * @return - a new in-process spectator, which starts with the welcome and the latest snapshot.
+     */
+    public Subscription subscribe() {
+        return new Subscription();
+    }
+
+    /**
+     * The hub thread starts here (the selector loop).
+     */
+    @Override
+    public void run() {
+        logger.info("spectator hub listening on port " + port() + " for " + maxConnections + " spectators");
+        try {
+            while (!closed) {
+                selector.select();
+                wakeupPending.set(false);
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isReadable()) read(connection);
+                    if (key.isValid() && key.isWritable()) send(connection);
+                }
+                if (publish())
+                    for (int i = connections.size() - 1; i >= 0; i--) // (a connection may leave as it is sent to)
+                        if (connections.get(i).sending == null) send(connections.get(i));
+            }
+        } catch (IOException e) {
+            if (!closed) logger.severe("spectator hub failed: " + e);
+        } finally {
+            publish(); // the last operations of the game (e.g. its end)
+            for (int i = connections.size() - 1; i >= 0; i--) send(connections.get(i));
+            for (int i = connections.size() - 1; i >= 0; i--) disconnect(connections.get(i));
+            try {
+                serverChannel.close();
+                selector.close();
+            } catch (IOException ignored) {}
+            logger.info("spectator hub closed after " + published + " frames, " + accepted + " connections and "
+                    + bytesSent + " bytes sent");
+            done.countDown();
+        }
+    }
+
+    /**
+     * Stops the hub and disconnects its spectators.
+     */
+    public void close() {
+        closed = true;
+        selector.wakeup();
+    }
+
+    /**
+     * Waits until the hub is closed and has published the last frames of the game.
+     */
+    public void awaitClosed() throws InterruptedException {
+        done.await();
+    }
+
+    /**
+     * Applies the queued operations to the game state and publishes them as one frame.
+     *
+     * @return - true iff a frame was published.
+     */
+    private boolean publish() {
+        int from = state.version();
+        long operation;
+        while ((operation = operations.poll()) != OperationRing.EMPTY)
+            state.apply(OperationRing.operation(operation), OperationRing.a(operation), OperationRing.b(operation));
+        long drops = operations.dropped();
+        if (drops > reportedDrops) {
+            logger.severe("warning: " + (drops - reportedDrops) + " game state operations were dropped (hub "
+                    + "overloaded)");
+            reportedDrops = drops;
+        }
+        if (state.version() == from) return false;
+
+        long sequence = published + 1;
+        // a batch larger than the log is published as a snapshot, which any spectator may apply at any time
+        WireProtocol.putChanges(encoder, state, from);
+        ring[(int) (sequence % RING_FRAMES)] = new Frame(sequence, copy());
+        if (sequence % SNAPSHOT_INTERVAL == 0 || state.isOver()) {
+            WireProtocol.putSnapshot(encoder, state);
+            snapshot = new Frame(sequence, copy());
+        }
+        published = sequence;
+        return true;
+    }
+
+    /**
+     * @return - the message just encoded, in a buffer of its own.
+     */
+    private ByteBuffer copy() {
+        encoder.flip();
+        ByteBuffer bytes = ByteBuffer.allocate(encoder.remaining());
+        bytes.put(encoder).flip();
+        encoder.clear();
+        return bytes;
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            if (connections.size() == maxConnections) {
+                channel.close();
+                continue;
+            }
+            channel.configureBlocking(false);
+            channel.setOption(StandardSocketOptions.TCP_NODELAY, true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            connections.add(connection);
+            accepted++;
+            send(connection);
+        }
+    }
+
+    /**
+     * Reads (and ignores) what a spectator sent, to notice it left.
+     */
+    private void read(Connection connection) {
+        try {
+            connection.in.clear();
+            if (connection.channel.read(connection.in) < 0) disconnect(connection);
+        } catch (IOException e) {
+            disconnect(connection);
+        }
+    }
+
+    private void disconnect(Connection connection) {
+        connections.remove(connection);
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException ignored) {}
+    }
+
+    /**
+     * Sends a spectator the frames it did not get yet, until they are all sent or its connection is full.
+     */
+    private void send(Connection connection) {
+        try {
+            while (true) {
+                if (connection.sending == null) connection.sending = connection.subscription.poll();
+                if (connection.sending == null) break;
+                bytesSent += connection.channel.write(connection.sending);
+                if (connection.sending.hasRemaining()) break;
+                connection.sending = null;
+            }
+        } catch (IOException e) {
+            disconnect(connection);
+            return;
+        }
+        // wait for the connection to be writable only while a frame could not be sent
+        connection.key.interestOps(connection.sending != null
+                ? SelectionKey.OP_READ | SelectionKey.OP_WRITE : SelectionKey.OP_READ);
+    }
+
+    /**
+     * Queues an operation on the game state for the hub thread (called by the game threads).
+     */
+    private void post(int operation, int a, int b) {
+        operations.offer(OperationRing.pack(operation, a, b));
+        if (wakeupPending.compareAndSet(false, true)) selector.wakeup();
+    }
+
+    private static int millies(long millies) {
+        return (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, millies));
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        post(WireProtocol.CARD, slot, card);
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        post(WireProtocol.CARD, slot, GameState.NO_CARD);
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        post(WireProtocol.TOKEN_PLACED, slot, player);
+    }
+
+    @Override
+    public void removeTokens() {
+        post(WireProtocol.TABLE_CLEARED, 0, 0);
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        post(WireProtocol.SLOT_CLEARED, slot, 0);
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        post(WireProtocol.TOKEN_REMOVED, slot, player);
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        post(WireProtocol.COUNTDOWN, warn ? 1 : 0, millies(millies));
+    }
+
+    @Override
+    public void setElapsed(long millies) {}
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        post(WireProtocol.FREEZE, player, millies(millies));
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        post(WireProtocol.SCORE, player, score);
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        for (int player : players) post(WireProtocol.WINNER, player, 0);
+        post(WireProtocol.GAME_OVER, 0, 0);
+    }
+
+    @Override
+    public void dispose() {
+        close();
+    }
+}
@@ -0,0 +1,239 @@
+package bguspl.set;
+
+import bguspl.set.SharedStateUserInterface.Layout;
+import bguspl.set.ex.Player;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static bguspl.set.SharedStateUserInterface.*;
+
+/**
+ * Shows a game running in another process, from the state it publishes to a shared file (see SharedStateUserInterface
+ * and the SharedStateFile configuration property). The viewer copies the state once per frame and passes the changes
+ * on to its own user interface (the game window, or the terminal where there is no display). It never writes to the
+ * file, so it cannot hold up the game, and it may be started before the game, during it or again after it crashed.
+ * When a new game replaces the file, the viewer follows it.
+ */
+public class StateViewer {
+
+    /**
+     * The times a frame tries to copy the state while it is being written before giving up (until the next frame).
+     */
+    private static final int READ_ATTEMPTS = 100;
+
+    /**
+     * A copy of the state.
+     */
+    private static final class State {
+        long countdown;
+        int flags;
+        final int[] cards;
+        final long[] tokens;
+        final int[] scores;
+        final long[] freezes;
+        final long[] winners;
+
+        State(Layout layout) {
+            cards = new int[layout.tableSize];
+            tokens = new long[layout.tableSize * layout.tokenWords];
+            scores = new int[layout.players];
+            freezes = new long[layout.players];
+            winners = new long[layout.tokenWords];
+        }
+    }
+
+    private final Logger logger;
+    private final Path path;
+    private final Layout layout;
+    private final UserInterface ui;
+
+    /**
+     * The mapped file and its session, the state last shown and the state being copied.
+     */
+    private MappedByteBuffer file;
+    private long session;
+    private State shown;
+    private State next;
+
+    /**
+     * @param layout - the layout of the games to show (of the table size and players the user interface shows).
+     */
+    StateViewer(Logger logger, Path path, Layout layout, UserInterface ui) {
+        this.logger = logger;
+        this.path = path;
+        this.layout = layout;
+        this.ui = ui;
+    }
+
+    /**
+     * @return - the layout of the game in a shared state file (null if there is none yet).
+     */
+    static Layout readLayout(Path path) throws IOException {
+        if (!Files.exists(path)) return null;
+        ByteBuffer header = ByteBuffer.allocate(CARDS);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            while (header.hasRemaining() && channel.read(header, header.position()) > 0);
+        }
+        if (header.hasRemaining() || header.getInt(0) != MAGIC) return null;
+        return new Layout(header.getInt(TABLE_SIZE), header.getInt(PLAYERS));
+    }
+
+    /**
+     * Maps the shared state file again if it holds another game.
+     *
+     * @return - true iff the viewer shows a game.
+     */
+    boolean follow() throws IOException {
+        Layout current = readLayout(path);
+        if (current == null) return file != null;
+        if (current.tableSize != layout.tableSize || current.players != layout.players) {
+            logger.warning("the game in " + path + " has " + current.tableSize + " slots and " + current.players
+                    + " players, the viewer shows " + layout.tableSize + " and " + layout.players);
+            return file != null;
+        }
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, layout.size);
+        }
+        if (file != null && mapped.getLong(SESSION) == session) return true;
+        file = mapped;
+        session = mapped.getLong(SESSION);
+        logger.info("showing the game of session " + session + " in " + path);
+
+        // nothing of the previous game is shown any more
+        ui.removeTokens();
+        shown = new State(layout);
+        Arrays.fill(shown.cards, Integer.MIN_VALUE);
+        Arrays.fill(shown.scores, Integer.MIN_VALUE);
+        Arrays.fill(shown.freezes, Long.MIN_VALUE);
+        shown.countdown = Long.MIN_VALUE;
+        next = new State(layout);
+        return true;
+    }
+
+    /**
+     * Copies the state of the file, unless it is being written.
+     *
+     * @return - true iff the copy is consistent.
+     */
+    private boolean read(State state) {
+        long sequence = file.getLong(SEQUENCE);
+        if ((sequence & 1) != 0) return false;
+        fence();
+        state.countdown = file.getLong(COUNTDOWN);
+        state.flags = file.getInt(FLAGS);
+        for (int slot = 0; slot < state.cards.length; slot++) state.cards[slot] = file.getInt(CARDS + 4 * slot);
+        for (int word = 0; word < state.tokens.length; word++)
+            state.tokens[word] = file.getLong(layout.tokens + 8 * word);
+        for (int player = 0; player < state.scores.length; player++)
+            state.scores[player] = file.getInt(layout.scores + 4 * player);
+        for (int player = 0; player < state.freezes.length; player++)
+            state.freezes[player] = file.getLong(layout.freezes + 8 * player);
+        for (int word = 0; word < state.winners.length; word++)
+            state.winners[word] = file.getLong(layout.winners + 8 * word);
+        fence();
+        return file.getLong(SEQUENCE) == sequence;
+    }
+
+    /**
+     * Shows what changed in the file since the last frame.
+     *
+     * @return - false iff there is no game or its state was written all along (nothing was shown).
+     */
+    boolean showChanges() {
+        if (file == null) return false;
+        for (int attempt = 1; !read(next); attempt++) {
+            if (attempt == READ_ATTEMPTS) return false;
+            Thread.yield();
+        }
+        for (int slot = 0; slot < next.cards.length; slot++)
+            if (next.cards[slot] != shown.cards[slot]) {
+                if (next.cards[slot] < 0) ui.removeCard(slot);
+                else ui.placeCard(next.cards[slot], slot);
+            }
+        for (int word = 0; word < next.tokens.length; word++)
+            for (long changed = next.tokens[word] ^ shown.tokens[word]; changed != 0; changed &= changed - 1) {
+                int bit = Long.numberOfTrailingZeros(changed);
+                int slot = word / layout.tokenWords;
+                int player = word % layout.tokenWords * Long.SIZE + bit;
+                if ((next.tokens[word] & 1L << bit) != 0) ui.placeToken(player, slot);
+                else ui.removeToken(player, slot);
+            }
+        for (int player = 0; player < next.scores.length; player++) {
+            if (next.scores[player] != shown.scores[player]) ui.setScore(player, next.scores[player]);
+            if (next.freezes[player] != shown.freezes[player]) ui.setFreeze(player, next.freezes[player]);
+        }
+        if (next.countdown != shown.countdown || ((next.flags ^ shown.flags) & (WARN | ELAPSED)) != 0) {
+            if ((next.flags & ELAPSED) != 0) ui.setElapsed(next.countdown);
+            else ui.setCountdown(next.countdown, (next.flags & WARN) != 0);
+        }
+        if ((next.flags & OVER) != 0 && (shown.flags & OVER) == 0) {
+            int[] winners = new int[layout.players];
+            int count = 0;
+            for (int player = 0; player < layout.players; player++)
+                if ((next.winners[player / Long.SIZE] & 1L << (player % Long.SIZE)) != 0) winners[count++] = player;
+            ui.announceWinner(Arrays.copyOf(winners, count));
+        }
+        State last = shown;
+        shown = next;
+        next = last;
+        return true;
+    }
+
+    /**
+     * The viewer's main function.
+     *
+     * @param args - the shared state file (default: the SharedStateFile of config.properties).
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        Logger logger = Main.initLogger();
+        Properties properties = Config.loadProperties("config.properties", logger);
+        String filename = args.length > 0 ? args[0] : properties.getProperty("SharedStateFile", "").trim();
+        if (filename.isEmpty()) {
+            System.out.println("usage: StateViewer <shared state file> (or set SharedStateFile in config.properties)");
+            return;
+        }
+        Path path = Paths.get(filename);
+        Layout layout;
+        while ((layout = readLayout(path)) == null) Thread.sleep(100); // the game did not start yet
+
+        // the configuration of the game shown: its players are all shown as computer players
+        properties.setProperty("HumanPlayers", "0");
+        properties.setProperty("ComputerPlayers", Integer.toString(layout.players));
+        properties.setProperty("RemotePlayers", "0");
+        Config config = new Config(logger, properties);
+        if (config.tableSize != layout.tableSize) {
+            System.out.println("the game has " + layout.tableSize + " slots, set Rows and Columns to match");
+            return;
+        }
+        UserInterface ui;
+        try {
+            String title = "Set Card Game - viewer of " + path;
+            ui = new UserInterfaceSwing(logger, config, new Player[config.players], title);
+        } catch (UnsupportedOperationException | IllegalArgumentException e) {
+            if (System.console() == null) {
+                System.out.println("error creating swing user interface: " + e.getMessage());
+                return;
+            }
+            ui = new UserInterfaceTerminal(logger, config, new UtilImpl(config), System.out);
+        }
+
+        StateViewer viewer = new StateViewer(logger, path, layout, ui);
+        long periodMillis = Math.max(1, 1000 / config.framesPerSecond);
+        for (long frame = 0; ; frame++) {
+            if ((frame * periodMillis) % 1000 < periodMillis) viewer.follow(); // once a second, for a new game
+            viewer.showChanges();
+            Thread.sleep(periodMillis);
+        }
+    }
+}
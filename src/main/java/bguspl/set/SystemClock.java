@@ -0,0 +1,28 @@
+package bguspl.set;
+
+/**
+ * A clock that follows the wall clock time.
+ */
+public class SystemClock implements Clock {
+
+    @Override
+    public long currentTimeMillis() {
+        return System.currentTimeMillis();
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        Thread.sleep(millis);
+    }
+
+    @Override
+    public void sleepUntil(long time) throws InterruptedException {
+        long millis = time - currentTimeMillis();
+        if (millis > 0) Thread.sleep(millis);
+    }
+
+    @Override
+    public void await(Object monitor, long millis) throws InterruptedException {
+        monitor.wait(millis);
+    }
+}
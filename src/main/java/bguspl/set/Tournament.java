@@ -0,0 +1,195 @@
+package bguspl.set;
+
+import bguspl.set.ex.Dealer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
+import java.util.concurrent.Semaphore;
+import java.util.logging.Handler;
+import java.util.logging.Logger;
+import java.util.stream.Collectors;
+
+import static java.lang.String.format;
+
+/**
+ * Plays a batch of headless games in parallel and aggregates their outcomes.
+ * Every game is played with one of several configuration variants (e.g. different freeze times or bot lineups) on
+ * top of a base configuration. As many games run at once as there are cores. The outcome of every game is streamed
+ * to a CSV file as soon as it ends, and a summary per variant (with the throughput in games per second) is printed
+ * at the end.
+ * <p>
+ * Variants file format: one variant per line, "name: Key=Value; Key=Value; ...", where the keys are those of
+ * config.properties. Lines starting with # are ignored. Without a variants file, the base configuration is played.
+ */
+public class Tournament {
+
+    /**
+     * The aggregated outcomes of the games of one variant.
+     */
+    private static class Variant {
+        final String name;
+        final Properties properties;
+        int games;
+        long sets;
+        long reshuffles;
+        long gameMillis;
+        long wallMillis;
+        long[] wins = new long[0];
+
+        Variant(String name, Properties properties) {
+            this.name = name;
+            this.properties = properties;
+        }
+
+        synchronized void add(Dealer dealer, long wall) {
+            games++;
+            sets += dealer.getSetsFound();
+            reshuffles += dealer.getReshuffles();
+            gameMillis += dealer.getGameMillis();
+            wallMillis += wall;
+            for (int winner : dealer.getWinners()) {
+                if (winner >= wins.length) wins = Arrays.copyOf(wins, winner + 1);
+                wins[winner]++;
+            }
+        }
+
+        synchronized String summary() {
+            int n = Math.max(games, 1);
+            return format("%s: %d games, %.1f sets, %.1f reshuffles, %.1f s game time, %.0f ms wall, wins %s",
+                    name, games, (double) sets / n, (double) reshuffles / n, gameMillis / 1000.0 / n,
+                    (double) wallMillis / n, Arrays.toString(wins));
+        }
+    }
+
+    /**
+     * Reads the variants file.
+     *
+     * @param filename - the name of the variants file (null or empty for a single variant with no changes).
+     * @param base     - the base configuration properties.
+     * @return - the variants, in file order.
+     */
+    private static List<Variant> loadVariants(String filename, Properties base) throws IOException {
+        List<Variant> variants = new ArrayList<>();
+        if (filename == null || filename.isEmpty()) {
+            variants.add(new Variant("base", withDefaults(base)));
+            return variants;
+        }
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(filename), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                int colon = line.indexOf(':');
+                String name = colon >= 0 ? line.substring(0, colon).trim() : line;
+                Properties properties = withDefaults(base);
+                for (String setting : line.substring(colon + 1).split(";")) {
+                    int equals = setting.indexOf('=');
+                    if (equals > 0)
+                        properties.setProperty(setting.substring(0, equals).trim(), setting.substring(equals + 1).trim());
+                }
+                variants.add(new Variant(name, properties));
+            }
+        }
+        return variants;
+    }
+
+    /**
+     * @return - a copy of the base properties with the settings every tournament game needs.
+     */
+    private static Properties withDefaults(Properties base) {
+        Properties properties = new Properties();
+        properties.putAll(base);
+        properties.setProperty("LogLevel", "SEVERE"); // a variant may still ask for more
+        properties.setProperty("Headless", "True");
+        // bots take the seats of the humans and the remote players
+        int seats = Integer.parseInt(base.getProperty("HumanPlayers", "2").trim())
+                + Integer.parseInt(base.getProperty("RemotePlayers", "0").trim())
+                + Integer.parseInt(base.getProperty("ComputerPlayers", "0").trim());
+        properties.setProperty("HumanPlayers", "0");
+        properties.setProperty("ComputerPlayers", Integer.toString(seats));
+        properties.setProperty("RemotePlayers", "0");
+        properties.setProperty("Spectators", "0"); // the games of a tournament would share the spectators' port
+        properties.setProperty("SharedStateFile", ""); // viewers watch in real time, tournament games run virtual
+        properties.setProperty("BotScheduleMode", "None");
+        return properties;
+    }
+
+    /**
+     * Plays the tournament.
+     *
+     * @param args - the variants file (default none), the number of games per variant (default 100), the CSV output
+     *             file (default tournament.csv) and the base configuration file (default config.properties).
+     */
+    public static void main(String[] args) throws IOException {
+        String variantsFile = args.length > 0 ? args[0] : "";
+        int gamesPerVariant = args.length > 1 ? Integer.parseInt(args[1]) : 100;
+        String csvFile = args.length > 2 ? args[2] : "tournament.csv";
+        String configFile = args.length > 3 ? args[3] : "config.properties";
+
+        Logger logger = Main.initLogger();
+        ThreadLogger.logStart(logger, Thread.currentThread().getName());
+        Properties base = Config.loadProperties(configFile, logger);
+        String baseSeed = base.getProperty("Seed", "").trim();
+        List<Variant> variants = loadVariants(variantsFile, base);
+
+        int parallelism = Runtime.getRuntime().availableProcessors();
+        Semaphore slots = new Semaphore(parallelism);
+        GameHost host = new GameHost(logger);
+        long start = System.nanoTime();
+        try (PrintWriter csv = new PrintWriter(Files.newBufferedWriter(Paths.get(csvFile), StandardCharsets.UTF_8))) {
+            csv.println("variant,game,seed,winners,scores,sets,reshuffles,game_ms,wall_ms");
+            for (Variant variant : variants) {
+                for (int game = 0; game < gamesPerVariant; game++) {
+                    Properties properties = variant.properties;
+                    if (!baseSeed.isEmpty()) { // a fixed base seed makes the whole tournament repeatable
+                        properties = new Properties();
+                        properties.putAll(variant.properties);
+                        properties.setProperty("Seed", Long.toString(Long.parseLong(baseSeed) + game));
+                    }
+                    Config config = new Config(logger, properties);
+                    int gameId = game;
+                    slots.acquireUninterruptibly();
+                    host.open(config, room -> {
+                        try {
+                            Dealer dealer = room.getDealer();
+                            variant.add(dealer, room.getWallMillis());
+                            String line = format("%s,%d,%d,%s,%s,%d,%d,%d,%d", variant.name, gameId, config.seed,
+                                    join(dealer.getWinners()), join(dealer.getScores()), dealer.getSetsFound(),
+                                    dealer.getReshuffles(), dealer.getGameMillis(), room.getWallMillis());
+                            synchronized (csv) {
+                                csv.println(line);
+                                csv.flush();
+                            }
+                        } finally {
+                            slots.release();
+                        }
+                    });
+                }
+            }
+            slots.acquireUninterruptibly(parallelism); // wait for the last games
+        } finally {
+            host.shutdown();
+        }
+
+        double seconds = (System.nanoTime() - start) / 1e9;
+        int games = variants.size() * gamesPerVariant;
+        for (Variant variant : variants)
+            System.out.println(variant.summary());
+        System.out.printf("%d games in %.1f s on %d cores (%.2f games/sec)%n", games, seconds, parallelism, games / seconds);
+        ThreadLogger.logStop(logger, Thread.currentThread().getName());
+        AsyncLog.drain(logger);
+        for (Handler h : logger.getHandlers()) h.flush();
+    }
+
+    private static String join(int[] values) {
+        return Arrays.stream(values).mapToObj(Integer::toString).collect(Collectors.joining(" "));
+    }
+}
@@ -2,18 +2,22 @@ package bguspl.set;
 
 import java.util.Arrays;
 import java.util.List;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
 public class UserInterfaceDecorator implements UserInterface {
 
-    private final Logger logger;
+    /**
+     * The log of the user interface events (written in the background, off the game threads).
+     */
+    private final AsyncLog log;
     private final Util util;
     private final UserInterface ui;
 
     public UserInterfaceDecorator(Logger logger, Util util, UserInterface ui) {
         this.ui = ui;
-        this.logger = logger;
+        this.log = AsyncLog.of(logger);
         this.util = util;
 
         if (ui == null) System.out.println("running without a user interface. Check logs.");
@@ -21,42 +25,42 @@ public class UserInterfaceDecorator implements UserInterface {
 
     @Override
     public void placeCard(int card, int slot) {
-        logger.severe("placing card " + card + " in slot " + slot);
+        log.log(Level.SEVERE, AsyncLog.Event.PLACE_CARD, card, slot);
         util.spin();
         if (ui != null) ui.placeCard(card, slot);
     }
 
     @Override
     public void removeCard(int slot) {
-        logger.severe("removing card from slot " + slot);
+        log.log(Level.SEVERE, AsyncLog.Event.REMOVE_CARD, slot);
         util.spin();
         if (ui != null) ui.removeCard(slot);
     }
 
     @Override
     public void placeToken(int player, int slot) {
-        logger.severe("player " + (player + 1) + " placing token on slot " + slot);
+        log.log(Level.SEVERE, AsyncLog.Event.PLACE_TOKEN, player + 1, slot);
         util.spin();
         if (ui != null) ui.placeToken(player, slot);
     }
 
     @Override
     public void removeTokens() {
-        logger.severe("removing all tokens");
+        log.log(Level.SEVERE, AsyncLog.Event.REMOVE_TOKENS);
         util.spin();
         if (ui != null) ui.removeTokens();
     }
 
     @Override
     public void removeTokens(int slot) {
-        logger.severe("removing tokens from slot " + slot);
+        log.log(Level.SEVERE, AsyncLog.Event.REMOVE_SLOT_TOKENS, slot);
         util.spin();
         if (ui != null) ui.removeTokens(slot);
     }
 
     @Override
     public void removeToken(int player, int slot) {
-        logger.severe("removing player " + (player + 1) + " token from slot " + slot);
+        log.log(Level.SEVERE, AsyncLog.Event.REMOVE_TOKEN, player + 1, slot);
         util.spin();
         if (ui != null) ui.removeToken(player, slot);
     }
@@ -64,27 +68,27 @@ public class UserInterfaceDecorator implements UserInterface {
     @Override
     public void setCountdown(long millies, boolean warn) {
         if (!warn || millies % 1000L == 0L)
-            logger.severe("updating countdown to " + millies);
+            log.log(Level.SEVERE, AsyncLog.Event.COUNTDOWN, millies);
         if (ui != null) ui.setCountdown(millies, warn);
     }
 
     @Override
     public void setElapsed(long millies) {
-        logger.severe("updating elapsed time to " + millies);
+        log.log(Level.SEVERE, AsyncLog.Event.ELAPSED, millies);
         util.spin();
         if (ui != null) ui.setElapsed(millies);
     }
 
     @Override
     public void setFreeze(int player, long millies) {
-        logger.severe("setting player " + (player + 1) + " freeze to " + millies);
+        log.log(Level.SEVERE, AsyncLog.Event.FREEZE, player + 1, millies);
         util.spin();
         if (ui != null) ui.setFreeze(player, millies);
     }
 
     @Override
     public void setScore(int player, int score) {
-        logger.severe("setting player " + (player + 1) + " score to " + score);
+        log.log(Level.SEVERE, AsyncLog.Event.SCORE, player + 1, score);
         util.spin();
         if (ui != null) ui.setScore(player, score);
     }
@@ -92,13 +96,13 @@ public class UserInterfaceDecorator implements UserInterface {
     @Override
     public void announceWinner(int[] players) {
         List<String> winners = Arrays.stream(players).mapToObj(id -> "player " + (id + 1)).collect(Collectors.toList());
-        logger.severe("announcing winner(s): " + String.join(", ", winners));
+        log.log(Level.SEVERE, "announcing winner(s): " + String.join(", ", winners));
         if (ui != null) ui.announceWinner(players);
     }
 
     @Override
     public void dispose() {
-        logger.severe("disposing of user interface elements");
+        log.log(Level.SEVERE, "disposing of user interface elements");
         if (ui != null) ui.dispose();
     }
 }
@@ -0,0 +1,85 @@
+package bguspl.set;
+
+import java.util.List;
+
+/**
+ * Forwards the user interface events of a game to several user interfaces (e.g. the game window and the remote
+ * players), in the order given.
+ */
+public class UserInterfaceGroup implements UserInterface {
+
+    private final UserInterface[] uis;
+
+    private UserInterfaceGroup(UserInterface[] uis) {
+        this.uis = uis;
+    }
+
+    /**
+     * @return - a user interface that forwards to all the given ones (null if there are none).
+     */
+    public static UserInterface of(List<UserInterface> uis) {
+        if (uis.isEmpty()) return null;
+        if (uis.size() == 1) return uis.get(0);
+        return new UserInterfaceGroup(uis.toArray(new UserInterface[0]));
+    }
+
+    @Override
+    public void placeCard(int card, int slot) {
+        for (UserInterface ui : uis) ui.placeCard(card, slot);
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        for (UserInterface ui : uis) ui.removeCard(slot);
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        for (UserInterface ui : uis) ui.placeToken(player, slot);
+    }
+
+    @Override
+    public void removeTokens() {
+        for (UserInterface ui : uis) ui.removeTokens();
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        for (UserInterface ui : uis) ui.removeTokens(slot);
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        for (UserInterface ui : uis) ui.removeToken(player, slot);
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        for (UserInterface ui : uis) ui.setCountdown(millies, warn);
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        for (UserInterface ui : uis) ui.setElapsed(millies);
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        for (UserInterface ui : uis) ui.setFreeze(player, millies);
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        for (UserInterface ui : uis) ui.setScore(player, score);
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        for (UserInterface ui : uis) ui.announceWinner(players);
+    }
+
+    @Override
+    public void dispose() {
+        for (UserInterface ui : uis) ui.dispose();
+    }
+}
@@ -4,10 +4,15 @@ import bguspl.set.ex.Player;
 
 import javax.swing.*;
 import java.awt.*;
-import java.io.FileNotFoundException;
-import java.net.URL;
+import java.awt.event.WindowListener;
 import java.util.Arrays;
+import java.util.HashMap;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 import java.util.stream.Collectors;
 
@@ -23,14 +28,70 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
     private final PlayersPanel playersPanel;
     private final WinnerPanel winnerPanel;
     private final Config config;
+    private final Logger logger;
+
+    /**
+     * What the window should show, written by the game threads and shown by the EDT once per frame.
+     */
+    private final DisplayState state;
+
+    /**
+     * Shows the changes of the display state on the EDT, once per frame.
+     */
+    private final Timer frameTimer;
+
+    /**
+     * Frame statistics: the number of frames that showed changes, and the time spent showing and painting them.
+     */
+    private long frames;
+    private long frameNanos;
+    private long maxFrameNanos;
+    private long paintNanos;
+
+    /**
+     * The card images, shared by the windows of all rooms in the process.
+     */
+    private final CardImages images;
+
+    /**
+     * When the window started being created (to report the time to the first frame).
+     */
+    private final long createdNanos = System.nanoTime();
 
     static String intInBaseToPaddedString(int n, int padding, int base) {
         return format("%" + padding + "s", Integer.toString(n, base)).replace(' ', '0');
     }
 
-    public UserInterfaceSwing(Logger logger, Config config, Player[] players) {
+    /**
+     * @return - the resource name of the image file of a card, named by its features.
+     */
+    static String cardFileName(Config config, int card) {
+        return "cards/" + intInBaseToPaddedString(card, config.featureCount, config.featureSize) + ".png";
+    }
+
+    /**
+     * Creates the window of a game room.
+     */
+    public UserInterfaceSwing(Logger logger, Config config, Player[] players, Room room) {
+        // closing the window of one room of a host must not end the other rooms
+        this(logger, config, players, room.isStandalone() ? "Set Card Game" : "Set Card Game - " + room.name,
+                room.isStandalone() ? JFrame.EXIT_ON_CLOSE : JFrame.DISPOSE_ON_CLOSE, new WindowManager(room));
+    }
+
+    /**
+     * Creates a window that shows a game without playing it (e.g. a replay). Closing it exits the process.
+     */
+    public UserInterfaceSwing(Logger logger, Config config, Player[] players, String title) {
+        this(logger, config, players, title, JFrame.EXIT_ON_CLOSE, null);
+    }
+
+    private UserInterfaceSwing(Logger logger, Config config, Player[] players, String title, int closeOperation,
+                               WindowListener windowManager) {
 
         this.config = config;
+        this.logger = logger;
+        images = CardImages.shared(config.imageCacheMegabytes * 1024L * 1024L);
+        state = new DisplayState(config.tableSize, config.players);
         timerPanel = new TimerPanel();
         gamePanel = new GamePanel();
         playersPanel = new PlayersPanel();
@@ -59,14 +120,43 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         setResizable(false);
         pack();
 
-        setTitle("Set Card Game");
+        setTitle(title);
         setLocationRelativeTo(null);
-        setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
+        setDefaultCloseOperation(closeOperation);
 
         addKeyListener(new InputManager(logger, config, players));
-        addWindowListener(new WindowManager());
+        if (windowManager != null) addWindowListener(windowManager);
+
+        frameTimer = new Timer(1000 / config.framesPerSecond, e -> showChanges());
+        frameTimer.setCoalesce(true);
+        EventQueue.invokeLater(() -> {
+            setVisible(true);
+            frameTimer.start();
+        });
+    }
 
-        EventQueue.invokeLater(() -> setVisible(true));
+    /**
+     * Shows the latest values of everything that changed since the last frame. Runs on the EDT.
+     */
+    private void showChanges() {
+        if (!state.takeDirty()) return;
+        long start = System.nanoTime();
+        for (int slot = 0; slot < config.tableSize; slot++)
+            if (state.takeSlot(slot)) gamePanel.showSlot(slot);
+        for (int player = 0; player < config.players; player++)
+            if (state.takePlayer(player)) playersPanel.showPlayer(player);
+        playersPanel.showRanking();
+        if (state.takeTimer()) timerPanel.showTimer(state.timer());
+        int[] winners = state.takeWinners();
+        if (winners != null) {
+            playersPanel.setVisible(false);
+            winnerPanel.announceWinner(winners);
+            winnerPanel.setVisible(true);
+        }
+        long nanos = System.nanoTime() - start;
+        frames++;
+        frameNanos += nanos;
+        maxFrameNanos = Math.max(maxFrameNanos, nanos);
     }
 
     private class TimerPanel extends JPanel {
@@ -90,51 +180,82 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
             add(timerField);
         }
 
-        private void setCountdown(long millies, boolean warn) {
-            timerField.setText(generateTime(millies, warn));
-            timerField.setForeground(warn ? Color.RED : Color.BLACK);
-        }
-
-        private void setElapsed(long millies) {
-            timerField.setText("Elapsed time: " + millies / 1000);
+        private void showTimer(long timer) {
+            long millies = DisplayState.timerMillis(timer);
+            switch (DisplayState.timerMode(timer)) {
+                case DisplayState.TIMER_COUNTDOWN:
+                case DisplayState.TIMER_WARN:
+                    boolean warn = DisplayState.timerMode(timer) == DisplayState.TIMER_WARN;
+                    timerField.setText(generateTime(millies, warn));
+                    timerField.setForeground(warn ? Color.RED : Color.BLACK);
+                    break;
+                case DisplayState.TIMER_ELAPSED:
+                    timerField.setText("Elapsed time: " + millies / 1000);
+                    break;
+            }
         }
     }
 
     private class GamePanel extends JLayeredPane {
 
+        private static final int MAX_TOKEN_LABELS = 4096;
+
         private final Image emptyCard;
-        private final Image[] deck;
-        private final Image[][] grid;
-        private final boolean[][][] playerTokens;
+        private final int[][] grid;
+
+        /**
+         * Draws the cards, unless they are shown from the card image files (null then).
+         */
+        private final CardRenderer renderer;
+        private final Util util;
         private final JLabel[][] tokenText;
 
-        private Image loadImageResource(String filename) {
-            URL imageResource = getClass().getClassLoader().getResource(filename);
-            if (imageResource == null)
-                throw new RuntimeException(new FileNotFoundException(filename));
-            return new ImageIcon(imageResource).getImage();
-        }
+        /**
+         * The token words each slot's label shows (see DisplayState), so labels are changed only when they change.
+         */
+        private final long[] shownTokens;
+        private final long[] tokens;
 
-        private GamePanel() {
+        /**
+         * The token labels by the bit mask of the players whose tokens are on a slot, built once for each mask (for
+         * up to 64 players). Used by the EDT only.
+         */
+        private final Map<Long, String> tokenLabels = new HashMap<>();
 
-            setPreferredSize(new Dimension(config.columns * config.cellWidth, config.rows * config.cellHeight));
+        /**
+         * The cards whose images are being loaded (so they are asked for once) or failed to load. Used by the EDT only.
+         */
+        private final Set<Integer> requested = new HashSet<>();
 
-            // init deck and load all pictures from png files
-            assert config.featureSize < 10; // otherwise there will be naming conflicts
+        private boolean painted;
 
-            // load the image resources
-            deck = new Image[config.deckSize];
-            for (int i = 0; i < config.deckSize; ++i)
-                deck[i] = loadImageResource("cards/" + intInBaseToPaddedString(i, config.featureCount, config.featureSize) + ".png");
-            emptyCard = loadImageResource("cards/empty_card.png");
+        private GamePanel() {
+
+            setPreferredSize(new Dimension(config.columns * config.cellWidth, config.rows * config.cellHeight));
 
-            grid = new Image[config.rows][config.columns];
+            // the card image files are named by the card's features (one digit each), so they exist for the standard
+            // deck only, any other deck is drawn
+            boolean files = !config.drawCards && config.featureSize <= 10
+                    && getClass().getClassLoader().getResource(cardFileName(config, 0)) != null;
+            renderer = files ? null : new CardRenderer(config);
+            util = new UtilImpl(config);
+
+            // the card images are loaded in the background when their cards are first placed, the empty card is shown
+            // from the first frame and stands in for the cards that are still loading
+            GraphicsConfiguration gc = UserInterfaceSwing.this.getGraphicsConfiguration();
+            emptyCard = renderer == null
+                    ? images.loadNow("cards/empty_card.png", config.cellWidth, config.cellHeight, gc)
+                    : images.loadNow("drawn/empty", config.cellWidth, config.cellHeight,
+                            () -> renderer.drawEmpty(config.cellWidth, config.cellHeight, gc));
+
+            grid = new int[config.rows][config.columns];
+            shownTokens = new long[config.tableSize * state.tokenWords];
+            tokens = new long[state.tokenWords];
             tokenText = new JLabel[config.rows][config.columns];
-            playerTokens = new boolean[config.players][config.rows][config.columns];
             for (int row = 0; row < config.rows; row++) {
                 for (int column = 0; column < config.columns; column++) {
                     // init the cards on the table grid as empty cards
-                    grid[row][column] = emptyCard;
+                    grid[row][column] = DisplayState.NO_CARD;
 
                     // init the JLabel selection overlay
                     tokenText[row][column] = new JLabel("");
@@ -148,67 +269,113 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
             }
         }
 
-        private void placeCard(int slot, int card) {
+        /**
+         * Shows the card and the tokens the display state holds for a slot.
+         */
+        private void showSlot(int slot) {
             int row = slot / config.columns;
             int column = slot % config.columns;
-            grid[row][column] = deck[card];
-            validate();
-            repaint();
+            int card = state.card(slot);
+            if (grid[row][column] != card) {
+                grid[row][column] = card;
+                repaint(column * config.cellWidth, row * config.cellHeight, config.cellWidth, config.cellHeight);
+            }
+            boolean tokensChanged = false;
+            for (int word = 0; word < tokens.length; word++) {
+                tokens[word] = state.tokens(slot, word);
+                if (tokens[word] != shownTokens[slot * tokens.length + word]) {
+                    shownTokens[slot * tokens.length + word] = tokens[word];
+                    tokensChanged = true;
+                }
+            }
+            if (tokensChanged) tokenText[row][column].setText(generatePlayersTokenText(tokens));
         }
 
-        private void removeCard(int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            grid[row][column] = emptyCard;
-            validate();
-            repaint();
+        private String cardImageName(int card) {
+            if (renderer != null) return "drawn/" + config.featureSize + "/" + config.featureCount + "/" + card;
+            return cardFileName(config, card);
         }
 
-        private void placeToken(int player, int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            playerTokens[player][row][column] = true;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
+        private CompletableFuture<Image> loadCardImage(int card) {
+            GraphicsConfiguration gc = getGraphicsConfiguration();
+            if (renderer == null)
+                return images.load(cardImageName(card), config.cellWidth, config.cellHeight, gc);
+            return images.load(cardImageName(card), config.cellWidth, config.cellHeight,
+                    () -> renderer.draw(util.cardToFeatures(card), config.cellWidth, config.cellHeight, gc));
         }
 
-        private void removeTokens() {
-            for (int i = 0; i < config.tableSize; i++)
-                removeTokens(i);
+        /**
+         * @return - the image of a card, or the empty card while it is loading (the cells showing it are repainted
+         *           once it is loaded).
+         */
+        private Image cardImage(int card) {
+            if (card == DisplayState.NO_CARD) return emptyCard;
+            Image image = images.get(cardImageName(card), config.cellWidth, config.cellHeight);
+            if (image != null) return image;
+            if (requested.add(card))
+                loadCardImage(card).whenComplete((loaded, error) -> EventQueue.invokeLater(() -> {
+                            if (error != null) {
+                                logger.log(Level.SEVERE, "error loading the image of card " + card, error);
+                                return;
+                            }
+                            requested.remove(card);
+                            repaintCard(card);
+                        }));
+            return emptyCard;
         }
 
-        private void removeTokens(int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            for (int player = 0; player < playerTokens.length; player++) {
-                playerTokens[player][row][column] = false;
-                tokenText[row][column].setText(generatePlayersTokenText(row, column));
-            }
+        private void repaintCard(int card) {
+            for (int row = 0; row < config.rows; row++)
+                for (int column = 0; column < config.columns; column++)
+                    if (grid[row][column] == card)
+                        repaint(column * config.cellWidth, row * config.cellHeight, config.cellWidth, config.cellHeight);
         }
 
-        private void removeToken(int player, int slot) {
-            int row = slot / config.columns;
-            int column = slot % config.columns;
-            playerTokens[player][row][column] = false;
-            tokenText[row][column].setText(generatePlayersTokenText(row, column));
+        /**
+         * @param tokens - the token words of a slot (see DisplayState).
+         * @return - the names of the players whose tokens are on the slot.
+         */
+        private String generatePlayersTokenText(long[] tokens) {
+            if (tokens.length > 1) return joinPlayerNames(tokens);
+            if (tokens[0] == 0) return "";
+            String label = tokenLabels.get(tokens[0]);
+            if (label == null) {
+                if (tokenLabels.size() >= MAX_TOKEN_LABELS) tokenLabels.clear();
+                label = joinPlayerNames(tokens);
+                tokenLabels.put(tokens[0], label);
+            }
+            return label;
         }
 
-        private String generatePlayersTokenText(int row, int column) {
-            String text = "";
-            for (int player = 0; player < config.players; player++) {
-                if (playerTokens[player][row][column])
-                    text = text.concat(config.playerNames[player] + ", ");
-            }
-            if (text.length() < 2)
-                return "";
-            return text.substring(0, text.length() - 2);
+        private String joinPlayerNames(long[] tokens) {
+            StringBuilder text = new StringBuilder();
+            for (int word = 0; word < tokens.length; word++)
+                for (long bits = tokens[word]; bits != 0; bits &= bits - 1) {
+                    if (text.length() > 0) text.append(", ");
+                    text.append(config.playerNames[word * Long.SIZE + Long.numberOfTrailingZeros(bits)]);
+                }
+            return text.toString();
         }
 
         @Override
         public void paintComponent(Graphics g) {
-            // draw card images
-            for (int row = 0; row < config.rows; row++)
-                for (int column = 0; column < config.columns; column++)
-                    g.drawImage(grid[row][column], (column * config.cellWidth), (row * config.cellHeight), this);
+            long start = System.nanoTime();
+            // draw the card images of the cells in the repainted area only
+            Rectangle clip = g.getClipBounds();
+            if (clip == null) clip = new Rectangle(getSize());
+            int firstRow = Math.max(0, clip.y / config.cellHeight);
+            int lastRow = Math.min(config.rows - 1, (clip.y + clip.height - 1) / config.cellHeight);
+            int firstColumn = Math.max(0, clip.x / config.cellWidth);
+            int lastColumn = Math.min(config.columns - 1, (clip.x + clip.width - 1) / config.cellWidth);
+            for (int row = firstRow; row <= lastRow; row++)
+                for (int column = firstColumn; column <= lastColumn; column++)
+                    g.drawImage(cardImage(grid[row][column]), (column * config.cellWidth), (row * config.cellHeight), this);
+            paintNanos += System.nanoTime() - start;
+            if (!painted) {
+                painted = true;
+                logger.info(format("first frame after %.1f ms, %d card images (%d KB) in memory",
+                        (System.nanoTime() - createdNanos) / 1e6, images.size(), images.bytes() / 1024));
+            }
         }
     }
 
@@ -216,18 +383,49 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
 
         private final JLabel[][] playersTable;
 
+        /**
+         * The player each column shows. When there are more players than the scoreboard shows, the columns show the
+         * ScoreboardSize leading players, then the human players who are not among them, then the next players in the
+         * ranking (if there are columns left).
+         */
+        private final int[] columnPlayer;
+        private final ScoreIndex ranking;
+        private final int[] ranked;
+        private final int[] shownPlayers;
+        private boolean rankingChanged;
+
+        /**
+         * The freeze second and the score each column's labels show (a freeze of -1 if none), so that labels are
+         * changed only when what they show changes.
+         */
+        private final long[] shownFreeze;
+        private final int[] shownScore;
+
         private PlayersPanel() {
-            this.setLayout(new GridLayout(2, config.players));
-            this.setPreferredSize(new Dimension(config.players * config.playerCellWidth, config.rows * config.playerCellHeight));
-            this.playersTable = new JLabel[2][config.players];
-            for (int i = 0; i < config.players; i++) {
-                this.playersTable[0][i] = new JLabel(config.playerNames[i]);
+            int columns = config.players;
+            if (config.scoreboardSize > 0 && config.scoreboardSize + config.humanPlayers < config.players)
+                columns = config.scoreboardSize + config.humanPlayers;
+            ranking = columns < config.players ? new ScoreIndex(config.players) : null;
+            ranked = new int[columns];
+            shownPlayers = new int[columns];
+            columnPlayer = new int[columns];
+            for (int column = 0; column < columns; column++)
+                columnPlayer[column] = column;
+
+            this.setLayout(new GridLayout(2, columns));
+            this.setPreferredSize(new Dimension(columns * config.playerCellWidth, config.rows * config.playerCellHeight));
+            this.playersTable = new JLabel[2][columns];
+            this.shownFreeze = new long[columns];
+            this.shownScore = new int[columns];
+            Arrays.fill(shownFreeze, -1);
+            for (int i = 0; i < columns; i++) {
+                this.playersTable[0][i] = new JLabel(config.playerNames[columnPlayer[i]]);
                 this.playersTable[0][i].setFont(new Font("Serif", Font.BOLD, config.fontSize));
                 this.playersTable[0][i].setHorizontalAlignment(JLabel.CENTER);
                 this.add(playersTable[0][i]);
             }
 
-            for (int i = 0; i < config.players; i++) {
+            for (int i = 0; i < columns; i++) {
                 this.playersTable[1][i] = new JLabel("0");
                 this.playersTable[1][i].setFont(new Font("Serif", Font.PLAIN, config.fontSize));
                 this.playersTable[1][i].setHorizontalAlignment(JLabel.CENTER);
@@ -235,18 +433,67 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
             }
         }
 
-        private void setFreeze(int player, long millies) {
+        private void showPlayer(int player) {
+            if (ranking != null) {
+                ranking.update(player, state.score(player));
+                rankingChanged = true;
+                return;
+            }
+            setFreeze(player, state.freeze(player));
+            setScore(player, state.score(player));
+        }
+
+        /**
+         * Shows the leading players, once all the changed players of a frame were ranked.
+         */
+        private void showRanking() {
+            if (!rankingChanged) return;
+            rankingChanged = false;
+            int count = ranking.top(ranked);
+            int shown = 0;
+            for (int i = 0; i < Math.min(config.scoreboardSize, count); i++)
+                shownPlayers[shown++] = ranked[i];
+            for (int human = 0; human < config.humanPlayers; human++)
+                if (!isShown(human, shown)) shownPlayers[shown++] = human;
+            for (int i = config.scoreboardSize; i < count && shown < shownPlayers.length; i++)
+                if (!isShown(ranked[i], shown)) shownPlayers[shown++] = ranked[i];
+
+            for (int column = 0; column < shown; column++) {
+                int player = shownPlayers[column];
+                if (columnPlayer[column] != player) {
+                    columnPlayer[column] = player;
+                    shownFreeze[column] = Long.MIN_VALUE; // another player's labels: always changed
+                    shownScore[column] = Integer.MIN_VALUE;
+                }
+                setFreeze(column, state.freeze(player));
+                setScore(column, state.score(player));
+            }
+        }
+
+        private boolean isShown(int player, int count) {
+            for (int i = 0; i < count; i++)
+                if (shownPlayers[i] == player) return true;
+            return false;
+        }
+
+        private void setFreeze(int column, long millies) {
+            long shown = millies > 0 ? millies / 1000 : -1;
+            if (shown == shownFreeze[column]) return;
+            shownFreeze[column] = shown;
+            int player = columnPlayer[column];
             if (millies > 0) {
-                this.playersTable[0][player].setText(config.playerNames[player] + " (" + millies / 1000 + ")");
-                this.playersTable[0][player].setForeground(Color.RED);
+                this.playersTable[0][column].setText(config.playerNames[player] + " (" + millies / 1000 + ")");
+                this.playersTable[0][column].setForeground(Color.RED);
             } else {
-                this.playersTable[0][player].setText(config.playerNames[player]);
-                this.playersTable[0][player].setForeground(Color.BLACK);
+                this.playersTable[0][column].setText(config.playerNames[player]);
+                this.playersTable[0][column].setForeground(Color.BLACK);
             }
         }
 
-        private void setScore(int player, int score) {
-            playersTable[1][player].setText(Integer.toString(score));
+        private void setScore(int column, int score) {
+            if (score == shownScore[column]) return;
+            shownScore[column] = score;
+            playersTable[1][column].setText(Integer.toString(score));
         }
     }
 
@@ -274,65 +521,73 @@ public class UserInterfaceSwing extends JFrame implements UserInterface {
         }
     }
 
+    // the game threads only update the display state, the EDT shows it on the next frame
+
     @Override
     public void placeCard(int card, int slot) {
-        gamePanel.placeCard(slot, card);
+        state.setCard(slot, card);
     }
 
     @Override
     public void removeCard(int slot) {
-        gamePanel.removeCard(slot);
+        state.setCard(slot, DisplayState.NO_CARD);
     }
 
     @Override
     public void placeToken(int player, int slot) {
-        gamePanel.placeToken(player, slot);
+        state.setToken(player, slot, true);
     }
 
     @Override
     public void removeTokens() {
-        gamePanel.removeTokens();
+        for (int slot = 0; slot < config.tableSize; slot++)
+            state.clearTokens(slot);
     }
 
     @Override
     public void removeTokens(int slot) {
-        gamePanel.removeTokens(slot);
+        state.clearTokens(slot);
     }
 
     @Override
     public void removeToken(int player, int slot) {
-        gamePanel.removeToken(player, slot);
+        state.setToken(player, slot, false);
     }
 
     @Override
     public void setCountdown(long millies, boolean warn) {
-        timerPanel.setCountdown(millies, warn);
+        state.setTimer(warn ? DisplayState.TIMER_WARN : DisplayState.TIMER_COUNTDOWN, millies);
     }
 
     @Override
     public void setElapsed(long millies) {
-        timerPanel.setElapsed(millies);
+        state.setTimer(DisplayState.TIMER_ELAPSED, millies);
     }
 
     @Override
     public void setFreeze(int player, long millies) {
-        playersPanel.setFreeze(player, millies);
+        state.setFreeze(player, millies);
     }
 
     @Override
     public void setScore(int player, int score) {
-        playersPanel.setScore(player, score);
+        state.setScore(player, score);
     }
 
     @Override
     public void announceWinner(int[] players) {
-        playersPanel.setVisible(false);
-        winnerPanel.announceWinner(players);
-        winnerPanel.setVisible(true);
+        state.setWinners(players);
     }
 
     @Override
     public void dispose() {
-        super.dispose();
+        EventQueue.invokeLater(() -> {
+            frameTimer.stop();
+            if (frames > 0)
+                logger.info(format("%d frames showed changes: %.1f us on average (max %.1f us) to update, %.1f us to paint the cards",
+                        frames, frameNanos / 1e3 / frames, maxFrameNanos / 1e3, paintNanos / 1e3 / frames));
+            logger.info(format("%d card images (%d KB) in memory", images.size(), images.bytes() / 1024));
+            super.dispose();
+        });
     }
 }
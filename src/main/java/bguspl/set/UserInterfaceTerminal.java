@@ -0,0 +1,344 @@
+package bguspl.set;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Logger;
+
+import static java.lang.String.format;
+
+/**
+ * Shows a game on a text terminal with ANSI escape codes (e.g. over SSH, where there is no display for the game
+ * window): the countdown, the cards and tokens on the table grid, the scores and freezes of the players and the
+ * winners. Cards are shown by their features (a digit each).
+ * <p>
+ * Like the game window, the game threads only update the display state. Once per frame a renderer thread lays out
+ * the whole screen in memory, compares it with what the terminal already shows and writes just the characters that
+ * differ, in one write. A quiet frame writes nothing, and a busy one costs the changed characters only, however many
+ * events there were. The whole screen is written again every few seconds, over whatever else was printed to the
+ * terminal meanwhile.
+ */
+public class UserInterfaceTerminal implements UserInterface {
+
+    private static final String ESC = "\u001b[";
+
+    /**
+     * Character styles.
+     */
+    private static final byte NORMAL = 0;
+    private static final byte RED = 1;
+    private static final byte BOLD = 2;
+    private static final String[] STYLES = {ESC + "0m", ESC + "0;31m", ESC + "0;1m"};
+
+    private static final long FULL_REDRAW_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * The lines of the screen: the timer, the table (three lines per row of cards: the card, its tokens and a space),
+     * the players and the winners.
+     */
+    private static final int TABLE_TOP = 2;
+    private static final int NAME_WIDTH = 16;
+
+    private final Logger logger;
+    private final Config config;
+    private final Util util;
+    private final PrintStream out;
+    private final DisplayState state;
+
+    /**
+     * The screen as laid out for the next frame and as the terminal shows it (a character and a style per cell).
+     */
+    private final int cellWidth;
+    private final int width;
+    private final int height;
+    private final int playersTop;
+    private final char[] screen;
+    private final byte[] styles;
+    private final char[] shown;
+    private final byte[] shownStyles;
+    private final StringBuilder output = new StringBuilder();
+
+    /**
+     * The players ranked by score, when there are more players than lines for them (null otherwise), the players shown
+     * and the winners (once announced). Used by the renderer only.
+     */
+    private final ScoreIndex ranking;
+    private final int[] ranked;
+    private final int[] shownPlayers;
+    private int[] winners;
+
+    private final Thread renderer;
+    private volatile boolean disposed;
+    private long frames;
+    private long charactersWritten;
+
+    /**
+     * Starts showing a game on a terminal.
+     *
+     * @param out - the terminal.
+     */
+    public UserInterfaceTerminal(Logger logger, Config config, Util util, PrintStream out) {
+        this.logger = logger;
+        this.config = config;
+        this.util = util;
+        this.out = out;
+        state = new DisplayState(config.tableSize, config.players);
+
+        int playerLines = config.players;
+        if (config.scoreboardSize > 0 && config.scoreboardSize + config.humanPlayers < config.players)
+            playerLines = config.scoreboardSize + config.humanPlayers;
+        ranking = playerLines < config.players ? new ScoreIndex(config.players) : null;
+        ranked = new int[playerLines];
+        shownPlayers = new int[playerLines];
+        for (int line = 0; line < playerLines; line++) shownPlayers[line] = line;
+
+        cellWidth = Math.max(config.featureCount + 3, 8);
+        width = Math.max(config.columns * cellWidth, NAME_WIDTH + 24);
+        playersTop = TABLE_TOP + 3 * config.rows;
+        height = playersTop + playerLines + 2;
+        screen = new char[width * height];
+        styles = new byte[width * height];
+        shown = new char[width * height];
+        shownStyles = new byte[width * height];
+
+        renderer = new Thread(this::render, "terminal");
+        renderer.setDaemon(true);
+        renderer.start();
+    }
+
+    /**
+     * The renderer thread starts here.
+     */
+    private void render() {
+        long period = TimeUnit.SECONDS.toNanos(1) / config.framesPerSecond;
+        long lastFull = System.nanoTime() - FULL_REDRAW_NANOS;
+        out.print(ESC + "?25l"); // no cursor
+        while (!disposed) {
+            long now = System.nanoTime();
+            boolean full = now - lastFull >= FULL_REDRAW_NANOS;
+            if (full) lastFull = now;
+            showChanges(full);
+            try {
+                TimeUnit.NANOSECONDS.sleep(period);
+            } catch (InterruptedException ignored) {}
+        }
+        showChanges(false);
+        out.print(STYLES[NORMAL] + ESC + (height + 1) + ";1H" + ESC + "?25h");
+        out.flush();
+        logger.info(format("%d terminal frames showed changes, %d characters written", frames, charactersWritten));
+    }
+
+    /**
+     * Shows what changed since the last frame.
+     *
+     * @param full - true to write the whole screen (the terminal may show anything).
+     */
+    private void showChanges(boolean full) {
+        if (!state.takeDirty() && !full) return;
+        layOut();
+        if (full) {
+            Arrays.fill(shown, '\0');
+            output.append(STYLES[NORMAL]).append(ESC).append("2J");
+        }
+
+        int row = -1;
+        int column = -1;
+        byte style = -1;
+        for (int cell = 0; cell < screen.length; cell++) {
+            if (screen[cell] == shown[cell] && styles[cell] == shownStyles[cell]) continue;
+            if (cell / width != row || cell % width != column) {
+                row = cell / width;
+                column = cell % width;
+                output.append(ESC).append(row + 1).append(';').append(column + 1).append('H');
+            }
+            if (styles[cell] != style) {
+                style = styles[cell];
+                output.append(STYLES[style]);
+            }
+            output.append(screen[cell]);
+            column++;
+            shown[cell] = screen[cell];
+            shownStyles[cell] = styles[cell];
+        }
+        if (output.length() == 0) return;
+        out.print(output);
+        out.flush();
+        frames++;
+        charactersWritten += output.length();
+        output.setLength(0);
+    }
+
+    /**
+     * Lays out the screen from the display state.
+     */
+    private void layOut() {
+        Arrays.fill(screen, ' ');
+        Arrays.fill(styles, NORMAL);
+
+        long timer = state.timer();
+        long millies = DisplayState.timerMillis(timer);
+        switch (DisplayState.timerMode(timer)) {
+            case DisplayState.TIMER_NONE:
+                put(0, 0, config.turnTimeoutMillis < 0 ? "PLAY" : "GET READY...", BOLD);
+                break;
+            case DisplayState.TIMER_COUNTDOWN:
+                put(0, 0, "Remaining Time: " + millies / 1000, NORMAL);
+                break;
+            case DisplayState.TIMER_WARN:
+                put(0, 0, format("Remaining Time: %.2f", millies / 1000.0), RED);
+                break;
+            case DisplayState.TIMER_ELAPSED:
+                put(0, 0, "Elapsed time: " + millies / 1000, NORMAL);
+                break;
+        }
+
+        StringBuilder text = new StringBuilder();
+        for (int slot = 0; slot < config.tableSize; slot++) {
+            int row = TABLE_TOP + 3 * (slot / config.columns);
+            int column = cellWidth * (slot % config.columns);
+            int card = state.card(slot);
+            text.setLength(0);
+            text.append('[');
+            if (card == DisplayState.NO_CARD) for (int i = 0; i < config.featureCount; i++) text.append('-');
+            else for (int feature : util.cardToFeatures(card)) text.append(Character.forDigit(feature, 36));
+            put(row, column, text.append(']').toString(), BOLD);
+
+            text.setLength(0);
+            for (int word = 0; word < state.tokenWords; word++)
+                for (long tokens = state.tokens(slot, word); tokens != 0; tokens &= tokens - 1) {
+                    if (text.length() > 0) text.append(',');
+                    text.append(word * Long.SIZE + Long.numberOfTrailingZeros(tokens) + 1);
+                }
+            if (text.length() > cellWidth - 1) { // more tokens than fit
+                text.setLength(cellWidth - 2);
+                text.append('+');
+            }
+            put(row + 1, column, text.toString(), NORMAL);
+        }
+
+        rank();
+        for (int line = 0; line < shownPlayers.length; line++) {
+            int player = shownPlayers[line];
+            long freeze = state.freeze(player);
+            String name = config.playerNames[player] + (freeze > 0 ? " (" + freeze / 1000 + ")" : "");
+            put(playersTop + line, 0, format("%-" + NAME_WIDTH + "s %6d", name, state.score(player)),
+                    freeze > 0 ? RED : NORMAL);
+        }
+
+        int[] announced = state.takeWinners();
+        if (announced != null) winners = announced;
+        if (winners != null) {
+            String[] names = new String[winners.length];
+            for (int i = 0; i < winners.length; i++) names[i] = config.playerNames[winners[i]];
+            put(height - 1, 0, winners.length == 1 ? "THE WINNER IS: " + names[0] + "!!!"
+                    : "IT IS A DRAW: " + String.join(" AND ", names) + " WON!!!", BOLD);
+        }
+    }
+
+    /**
+     * Picks the players to show when there are more than lines for them: the ScoreboardSize leading players, then the
+     * human players who are not among them, then the next players in the ranking (as the game window does).
+     */
+    private void rank() {
+        if (ranking == null) return;
+        boolean changed = false;
+        for (int player = 0; player < config.players; player++)
+            if (state.takePlayer(player)) {
+                ranking.update(player, state.score(player));
+                changed = true;
+            }
+        if (!changed) return;
+        int count = ranking.top(ranked);
+        int shownCount = 0;
+        for (int i = 0; i < Math.min(config.scoreboardSize, count); i++)
+            shownPlayers[shownCount++] = ranked[i];
+        for (int human = 0; human < config.humanPlayers; human++)
+            if (!isShown(human, shownCount)) shownPlayers[shownCount++] = human;
+        for (int i = config.scoreboardSize; i < count && shownCount < shownPlayers.length; i++)
+            if (!isShown(ranked[i], shownCount)) shownPlayers[shownCount++] = ranked[i];
+    }
+
+    private boolean isShown(int player, int count) {
+        for (int i = 0; i < count; i++)
+            if (shownPlayers[i] == player) return true;
+        return false;
+    }
+
+    /**
+     * Writes a text on a line of the screen (clipped at its width).
+     */
+    private void put(int row, int column, String text, byte style) {
+        int cell = row * width + column;
+        for (int i = 0; i < text.length() && column + i < width; i++) {
+            screen[cell + i] = text.charAt(i);
+            styles[cell + i] = style;
+        }
+    }
+
+    // the game threads only update the display state, the renderer shows it on the next frame
+
+    @Override
+    public void placeCard(int card, int slot) {
+        state.setCard(slot, card);
+    }
+
+    @Override
+    public void removeCard(int slot) {
+        state.setCard(slot, DisplayState.NO_CARD);
+    }
+
+    @Override
+    public void placeToken(int player, int slot) {
+        state.setToken(player, slot, true);
+    }
+
+    @Override
+    public void removeTokens() {
+        for (int slot = 0; slot < config.tableSize; slot++)
+            state.clearTokens(slot);
+    }
+
+    @Override
+    public void removeTokens(int slot) {
+        state.clearTokens(slot);
+    }
+
+    @Override
+    public void removeToken(int player, int slot) {
+        state.setToken(player, slot, false);
+    }
+
+    @Override
+    public void setCountdown(long millies, boolean warn) {
+        state.setTimer(warn ? DisplayState.TIMER_WARN : DisplayState.TIMER_COUNTDOWN, millies);
+    }
+
+    @Override
+    public void setElapsed(long millies) {
+        state.setTimer(DisplayState.TIMER_ELAPSED, millies);
+    }
+
+    @Override
+    public void setFreeze(int player, long millies) {
+        state.setFreeze(player, millies);
+    }
+
+    @Override
+    public void setScore(int player, int score) {
+        state.setScore(player, score);
+    }
+
+    @Override
+    public void announceWinner(int[] players) {
+        state.setWinners(players);
+    }
+
+    @Override
+    public void dispose() {
+        disposed = true;
+        renderer.interrupt();
+        try {
+            renderer.join(1000);
+        } catch (InterruptedException ignored) {}
+    }
+}
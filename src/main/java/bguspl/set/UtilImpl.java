@@ -3,6 +3,8 @@ package bguspl.set;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ThreadLocalRandom;
 import java.util.stream.IntStream;
 
@@ -13,8 +15,26 @@ public class UtilImpl implements Util {
 
     private final Config config;
 
+    /**
+     * The features of every card of the deck, per feature size and feature count. Shared by all the games of the
+     * process and never modified once computed.
+     */
+    private static final Map<Long, int[][]> featureTables = new ConcurrentHashMap<>();
+
+    /**
+     * The features of every card of the deck (features[card]), read only.
+     */
+    private final int[][] features;
+
     public UtilImpl(Config config) {
         this.config = config;
+        long key = ((long) config.featureSize << 32) | config.featureCount;
+        features = featureTables.computeIfAbsent(key, k -> {
+            int[][] table = new int[config.deckSize][config.featureCount];
+            for (int card = 0; card < table.length; ++card)
+                cardToFeatures(card, table[card]);
+            return table;
+        });
     }
 
     private void cardToFeatures(int card, int[] features) {
@@ -24,23 +44,33 @@ public class UtilImpl implements Util {
         }
     }
 
+    /**
+     * @return - the features of the card, possibly shared (callers must not modify them).
+     */
+    private int[] sharedFeatures(int card) {
+        if (card >= 0 && card < features.length) return features[card];
+        int[] computed = new int[config.featureCount];
+        cardToFeatures(card, computed);
+        return computed;
+    }
+
     @Override
     public int[] cardToFeatures(int card) {
-        int[] features = new int[config.featureCount];
-        cardToFeatures(card, features);
-        return features;
+        return sharedFeatures(card).clone();
     }
 
     @Override
     public int[][] cardsToFeatures(int[] cards) {
-        int[][] features = new int[cards.length][config.featureCount];
-        IntStream.range(0, cards.length).forEach(i -> cardToFeatures(cards[i], features[i]));
+        int[][] features = new int[cards.length][];
+        IntStream.range(0, cards.length).forEach(i -> features[i] = cardToFeatures(cards[i]));
         return features;
     }
 
     @Override
     public boolean testSet(int[] cards) {
-        int[][] features = cardsToFeatures(Arrays.copyOf(cards, cards.length));
+        int[][] features = new int[cards.length][];
+        for (int j = 0; j < cards.length; ++j)
+            features[j] = sharedFeatures(cards[j]);
         for (int i = 0; i < config.featureCount; ++i) {
             boolean sameSame = true, butDifferent = true;
 
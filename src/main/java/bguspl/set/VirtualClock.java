@@ -0,0 +1,87 @@
+package bguspl.set;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A clock for headless simulations, in which time moves only when the driving thread says so.
+ * The driver is the thread that waits through await (i.e. the dealer): every such wait advances the clock by the
+ * full timeout immediately instead of waiting for it. Any other thread that sleeps is blocked until the driver has
+ * advanced the clock past its wake-up time. A game therefore runs as fast as the CPU allows, while all the game
+ * rules that depend on time (turn timeout, freezes) keep their relative order.
+ */
+public class VirtualClock implements Clock {
+
+    /**
+     * The current virtual time in milliseconds.
+     */
+    private final AtomicLong now;
+
+    /**
+     * The number of threads blocked in sleep (modified only while holding the clock's monitor).
+     */
+    private volatile int sleepers;
+
+    /**
+     * The thread that advances the clock (the last one that called await).
+     */
+    private volatile Thread driver;
+
+    public VirtualClock() {
+        this(0);
+    }
+
+    /**
+     * @param startMillis - the virtual time to start from.
+     */
+    public VirtualClock(long startMillis) {
+        now = new AtomicLong(startMillis);
+    }
+
+    @Override
+    public long currentTimeMillis() {
+        return now.get();
+    }
+
+    /**
+     * Moves the clock forward and releases the sleepers whose wake-up time has come.
+     *
+     * @param millis - the number of milliseconds to advance.
+     */
+    public void advance(long millis) {
+        if (millis <= 0) return;
+        now.addAndGet(millis);
+        if (sleepers > 0) synchronized (this) {
+            notifyAll();
+        }
+    }
+
+    @Override
+    public void sleep(long millis) throws InterruptedException {
+        if (millis > 0) sleepUntil(now.get() + millis);
+    }
+
+    @Override
+    public void sleepUntil(long wakeTime) throws InterruptedException {
+        if (Thread.currentThread() == driver) { // nobody else would advance the clock for us
+            advance(wakeTime - now.get());
+            return;
+        }
+        if (now.get() >= wakeTime) return;
+        synchronized (this) {
+            sleepers++;
+            try {
+                while (now.get() < wakeTime) wait();
+            } finally {
+                sleepers--;
+            }
+        }
+    }
+
+    @Override
+    public void await(Object monitor, long millis) throws InterruptedException {
+        driver = Thread.currentThread();
+        advance(millis);
+        if (Thread.interrupted()) throw new InterruptedException();
+        Thread.yield(); // give the other game threads a chance to act in the new time frame
+    }
+}
@@ -8,6 +8,15 @@ import java.awt.event.WindowListener;
  */
 public class WindowManager implements WindowListener {
 
+    /**
+     * The room whose window is managed.
+     */
+    private final Room room;
+
+    public WindowManager(Room room) {
+        this.room = room;
+    }
+
     @Override
     public void windowOpened(WindowEvent e) {
         // Auto-generated method stub
@@ -16,7 +25,7 @@ public class WindowManager implements WindowListener {
     @Override
     public void windowClosing(WindowEvent e) {
         try {
-            Main.xButtonPressed();
+            room.xButtonPressed();
         } catch (InterruptedException ignored) {}
     }
 
@@ -0,0 +1,328 @@
+package bguspl.set;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * The binary protocol between the game server and its clients (see GameServer).
+ * <p>
+ * A client sends fixed-width input frames of 4 bytes: {type, argument, slot (2 bytes)}. It may start with a HELLO frame
+ * carrying its protocol version, and then sends a PRESS frame for each key press.
+ * <p>
+ * The server sends messages of {length (4 bytes, including the header), type (1 byte), body}: a WELCOME when the client
+ * connects, then a SNAPSHOT of the game state (see GameState), then DELTA messages with the operations that took the
+ * state from the client's version to a later one. A client that falls too far behind gets a SNAPSHOT of the current
+ * state instead of the operations it missed.
+ * <p>
+ * Messages are encoded into and decoded from ByteBuffers in place, with absolute sizes known up front: an encoder writes
+ * a whole message or nothing, and a decoder leaves an incomplete message in the buffer for the next read.
+ */
+public final class WireProtocol {
+
+    public static final int VERSION = 1;
+
+    /**
+     * Client to server frames.
+     */
+    public static final int INPUT_FRAME = 4;
+    public static final int HELLO = 1;           // argument: the client's protocol version
+    public static final int PRESS = 2;           // slot: the slot pressed
+
+    /**
+     * Server to client messages.
+     */
+    public static final int HEADER = 5;
+    public static final int WELCOME = 1;         // protocol version (1), player (4, -1 for none), table size (4), players (4)
+    public static final int SNAPSHOT = 2;        // version (4), countdown (4), warn (1), over (1), winners (4 + 4 each),
+                                                 // cards (4 each), tokens (8 per word), scores (4 each), freezes (4 each)
+    public static final int DELTA = 3;           // from version (4), to version (4), operations
+
+    /**
+     * Delta operations (see GameState.apply), with their encoded size.
+     */
+    public static final int CARD = 1;            // slot (2), card (4, -1 for none)
+    public static final int TOKEN_PLACED = 2;    // slot (2), player (2)
+    public static final int TOKEN_REMOVED = 3;   // slot (2), player (2)
+    public static final int SLOT_CLEARED = 4;    // slot (2): the tokens of all players were removed from it
+    public static final int TABLE_CLEARED = 5;   // the tokens of all players were removed from the table
+    public static final int SCORE = 6;           // player (2), score (4): sent after every verdict on a claim
+    public static final int FREEZE = 7;          // player (2), the remaining freeze in milliseconds (4)
+    public static final int COUNTDOWN = 8;       // warn (1), the remaining time in milliseconds (4)
+    public static final int WINNER = 9;          // player (2)
+    public static final int GAME_OVER = 10;
+
+    static final int[] OPERATION_SIZE = {0, 7, 5, 5, 3, 1, 7, 7, 6, 3, 1};
+
+    private WireProtocol() {}
+
+    /**
+     * Receives the messages of the server, keeping a copy of the game state.
+     */
+    public interface Listener {
+
+        /**
+         * The client joined the game.
+         *
+         * @param player - the player the client plays (-1 for none).
+         */
+        default void welcome(int player) {}
+
+        /**
+         * The state was replaced by a snapshot.
+         */
+        default void snapshot(GameState state) {}
+
+        /**
+         * An operation was applied to the state.
+         */
+        default void operation(GameState state, int operation, int a, int b) {}
+    }
+
+    /**
+     * The client side of the protocol: decodes the messages of the server into a game state.
+     */
+    public static class Reader {
+
+        private final Listener listener;
+        private GameState state;
+        private int player = -1;
+
+        public Reader(Listener listener) {
+            this.listener = listener;
+        }
+
+        /**
+         * @return - the game state (null until the client is welcomed).
+         */
+        public GameState state() {
+            return state;
+        }
+
+        /**
+         * @return - the player the client plays (-1 for none).
+         */
+        public int player() {
+            return player;
+        }
+
+        /**
+         * Decodes the complete messages in a buffer, which is left at the first incomplete one.
+         *
+         * @param in - the buffer, ready for reading.
+         * @throws ProtocolException - if the server does not speak this protocol.
+         */
+        public void read(ByteBuffer in) throws ProtocolException {
+            while (in.remaining() >= HEADER) {
+                int start = in.position();
+                int length = in.getInt(start);
+                if (length < HEADER) throw new ProtocolException("bad message length " + length);
+                if (in.remaining() < length) break;
+                int type = in.get(start + 4);
+                in.position(start + HEADER);
+                switch (type) {
+                    case WELCOME:
+                        int version = in.get();
+                        if (version != VERSION)
+                            throw new ProtocolException("protocol version " + version + " (expected " + VERSION + ")");
+                        player = in.getInt();
+                        int tableSize = in.getInt();
+                        state = new GameState(tableSize, in.getInt(), 0);
+                        listener.welcome(player);
+                        break;
+                    case SNAPSHOT:
+                        getSnapshot(in, checkWelcomed());
+                        listener.snapshot(state);
+                        break;
+                    case DELTA:
+                        GameState current = checkWelcomed();
+                        int from = in.getInt();
+                        int to = in.getInt();
+                        if (from != current.version)
+                            throw new ProtocolException("delta from version " + from + " at version " + current.version);
+                        while (current.version < to) getOperation(in, current, listener);
+                        break;
+                    default:
+                        throw new ProtocolException("unknown message " + type);
+                }
+                in.position(start + length);
+            }
+        }
+
+        private GameState checkWelcomed() throws ProtocolException {
+            if (state == null) throw new ProtocolException("not welcomed");
+            return state;
+        }
+    }
+
+    /**
+     * Encodes an input frame.
+     */
+    public static void putInput(ByteBuffer out, int type, int argument, int slot) {
+        out.put((byte) type).put((byte) argument).putShort((short) slot);
+    }
+
+    public static int inputType(ByteBuffer in, int position) {
+        return in.get(position);
+    }
+
+    public static int inputArgument(ByteBuffer in, int position) {
+        return in.get(position + 1);
+    }
+
+    public static int inputSlot(ByteBuffer in, int position) {
+        return in.getShort(position + 2) & 0xFFFF;
+    }
+
+    /**
+     * @return - the size of a WELCOME message.
+     */
+    public static int welcomeSize() {
+        return HEADER + 13;
+    }
+
+    /**
+     * @return - the size of a SNAPSHOT message of a state.
+     */
+    public static int snapshotSize(GameState state) {
+        return snapshotSize(state.tableSize, state.players, state.winners.length);
+    }
+
+    /**
+     * @return - the size of a SNAPSHOT message of a game.
+     */
+    public static int snapshotSize(int tableSize, int players, int winners) {
+        int tokenWords = (players + Long.SIZE - 1) / Long.SIZE;
+        return HEADER + 14 + 4 * winners + 4 * tableSize + 8 * tableSize * tokenWords + 8 * players;
+    }
+
+    /**
+     * Encodes a WELCOME message.
+     *
+     * @return - false iff it does not fit (nothing was written).
+     */
+    public static boolean putWelcome(ByteBuffer out, int player, GameState state) {
+        if (out.remaining() < welcomeSize()) return false;
+        out.putInt(welcomeSize()).put((byte) WELCOME)
+                .put((byte) VERSION).putInt(player).putInt(state.tableSize).putInt(state.players);
+        return true;
+    }
+
+    /**
+     * Encodes a SNAPSHOT message of the current state.
+     *
+     * @return - false iff it does not fit (nothing was written).
+     */
+    public static boolean putSnapshot(ByteBuffer out, GameState state) {
+        int size = snapshotSize(state);
+        if (out.remaining() < size) return false;
+        out.putInt(size).put((byte) SNAPSHOT)
+                .putInt(state.version).putInt(state.countdown)
+                .put((byte) (state.warn ? 1 : 0)).put((byte) (state.over ? 1 : 0))
+                .putInt(state.winners.length);
+        for (int winner : state.winners) out.putInt(winner);
+        for (int card : state.cards) out.putInt(card);
+        for (long word : state.tokens) out.putLong(word);
+        for (int score : state.scores) out.putInt(score);
+        for (int freeze : state.freezes) out.putInt(freeze);
+        return true;
+    }
+
+    private static void getSnapshot(ByteBuffer in, GameState state) {
+        state.version = in.getInt();
+        state.countdown = in.getInt();
+        state.warn = in.get() != 0;
+        state.over = in.get() != 0;
+        state.winners = new int[in.getInt()];
+        for (int i = 0; i < state.winners.length; i++) state.winners[i] = in.getInt();
+        for (int slot = 0; slot < state.cards.length; slot++) state.cards[slot] = in.getInt();
+        for (int word = 0; word < state.tokens.length; word++) state.tokens[word] = in.getLong();
+        for (int player = 0; player < state.scores.length; player++) state.scores[player] = in.getInt();
+        for (int player = 0; player < state.freezes.length; player++) state.freezes[player] = in.getInt();
+    }
+
+    /**
+     * Encodes a DELTA message with the logged operations from a version to the current one.
+     *
+     * @param from - the version the client has (no older than the oldest logged one).
+     * @return - false iff it does not fit (nothing was written).
+     */
+    public static boolean putDelta(ByteBuffer out, GameState state, int from) {
+        int size = HEADER + 8;
+        for (int version = from; version < state.version; version++)
+            size += OPERATION_SIZE[state.loggedOperation(version)];
+        if (out.remaining() < size) return false;
+        out.putInt(size).put((byte) DELTA).putInt(from).putInt(state.version);
+        for (int version = from; version < state.version; version++)
+            putOperation(out, state.loggedOperation(version), state.loggedA(version), state.loggedB(version));
+        return true;
+    }
+
+    /**
+     * Encodes the changes of the state since a version: a DELTA if the operations since it are still logged and fit,
+     * a SNAPSHOT otherwise.
+     *
+     * @param from - the version the client has.
+     * @return - the type of the message written, or 0 if neither fits (nothing was written).
+     */
+    public static int putChanges(ByteBuffer out, GameState state, int from) {
+        if (from >= state.oldestLogged() && putDelta(out, state, from)) return DELTA;
+        if (putSnapshot(out, state)) return SNAPSHOT;
+        return 0;
+    }
+
+    private static void putOperation(ByteBuffer out, int operation, int a, int b) {
+        out.put((byte) operation);
+        switch (operation) {
+            case CARD:
+            case SCORE:
+            case FREEZE:
+                out.putShort((short) a).putInt(b);
+                break;
+            case TOKEN_PLACED:
+            case TOKEN_REMOVED:
+                out.putShort((short) a).putShort((short) b);
+                break;
+            case SLOT_CLEARED:
+            case WINNER:
+                out.putShort((short) a);
+                break;
+            case COUNTDOWN:
+                out.put((byte) a).putInt(b);
+                break;
+        }
+    }
+
+    private static void getOperation(ByteBuffer in, GameState state, Listener listener) throws ProtocolException {
+        int operation = in.get();
+        int a = 0;
+        int b = 0;
+        switch (operation) {
+            case CARD:
+            case SCORE:
+            case FREEZE:
+                a = in.getShort() & 0xFFFF;
+                b = in.getInt();
+                break;
+            case TOKEN_PLACED:
+            case TOKEN_REMOVED:
+                a = in.getShort() & 0xFFFF;
+                b = in.getShort() & 0xFFFF;
+                break;
+            case SLOT_CLEARED:
+            case WINNER:
+                a = in.getShort() & 0xFFFF;
+                break;
+            case COUNTDOWN:
+                a = in.get();
+                b = in.getInt();
+                break;
+            case TABLE_CLEARED:
+            case GAME_OVER:
+                break;
+            default:
+                throw new ProtocolException("unknown operation " + operation);
+        }
+        state.apply(operation, a, b);
+        listener.operation(state, operation, a, b);
+    }
+}
@@ -0,0 +1,170 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * The claims of the computer players, as recorded from a game or replayed into one.
+ * Each claim is kept with the time (on the game clock, relative to the start of the game) the dealer judged it.
+ * When replaying, the dealer feeds every claim to its player at the recorded time through the player's normal input
+ * path, and judges it before moving on. Together with the game seed (which fixes the deals) this makes a game on the
+ * virtual clock repeat the exact same sequence of deals and claims.
+ * Only computer players are recorded and replayed: the input of a human or remote player has a producer of its own
+ * (the keyboard or the game server), the dealer must not press keys for it too.
+ * File format: one claim per line, "time player slot slot slot".
+ */
+public class BotSchedule {
+
+    /**
+     * A single claim of a computer player.
+     */
+    static class Claim {
+        final long time;
+        final int player;
+        final int[] slots;
+
+        Claim(long time, int player, int[] slots) {
+            this.time = time;
+            this.player = player;
+            this.slots = slots;
+        }
+    }
+
+    /**
+     * The game environment object.
+     */
+    private final Env env;
+
+    /**
+     * The game clock time the schedule is relative to.
+     */
+    private final long startTime;
+
+    private final boolean recording;
+
+    /**
+     * The claims recorded so far (when recording), in the order they were judged. Accessed by the dealer only.
+     */
+    private final List<Claim> recorded = new ArrayList<>();
+
+    /**
+     * The claims left to replay, in the order they should be judged.
+     */
+    private final ArrayDeque<Claim> toReplay = new ArrayDeque<>();
+
+    /**
+     * True iff there are claims left to replay (computer players do not play on their own meanwhile).
+     */
+    private volatile boolean replaying;
+
+    /**
+     * @param env - the environment object (the mode and file are taken from its configuration).
+     */
+    public BotSchedule(Env env) {
+        this.env = env;
+        this.startTime = env.clock.currentTimeMillis();
+        recording = env.config.botScheduleMode.equals("record");
+        if (env.config.botScheduleMode.equals("replay") && load())
+            replaying = !toReplay.isEmpty();
+    }
+
+    private boolean load() {
+        try (BufferedReader reader = Files.newBufferedReader(Paths.get(env.config.botScheduleFile), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) continue;
+                String[] fields = line.split("\\s+");
+                int[] slots = new int[fields.length - 2];
+                for (int i = 0; i < slots.length; i++)
+                    slots[i] = Integer.parseInt(fields[i + 2]);
+                Claim claim = new Claim(Long.parseLong(fields[0]), Integer.parseInt(fields[1]), slots);
+                if (isComputerPlayer(claim.player))
+                    toReplay.add(claim);
+            }
+            return true;
+        } catch (IOException | RuntimeException e) {
+            env.logger.severe("cannot read bot schedule " + env.config.botScheduleFile + ": " + e + ". Bots will play randomly.");
+            return false;
+        }
+    }
+
+    /**
+     * @return - true iff the player is a computer player (like Room, the human and remote players come first).
+     */
+    private boolean isComputerPlayer(int player) {
+        return player >= env.config.humanPlayers + env.config.remotePlayers && player < env.config.players;
+    }
+
+    /**
+     * @return - true iff recorded claims are still being replayed.
+     */
+    public boolean isReplaying() {
+        return replaying;
+    }
+
+    /**
+     * Records a claim judged by the dealer (does nothing unless recording, or for a human or remote player).
+     *
+     * @param player - the id of the player.
+     * @param slots  - the slots of the claimed set.
+     */
+    void record(int player, int[] slots) {
+        if (recording && isComputerPlayer(player)) recorded.add(new Claim(env.clock.currentTimeMillis() - startTime, player, slots.clone()));
+    }
+
+    /**
+     * Removes the next claim to replay if its time has come.
+     *
+     * @return - the claim, or null if there is none due.
+     */
+    Claim pollDue() {
+        Claim next = toReplay.peek();
+        if (next == null || startTime + next.time > env.clock.currentTimeMillis()) return null;
+        toReplay.poll();
+        if (toReplay.isEmpty()) {
+            replaying = false;
+            env.logger.severe("bot schedule replay completed, bots play on their own from now on");
+        }
+        return next;
+    }
+
+    /**
+     * Stops replaying (e.g. when a recorded claim could not be reproduced).
+     */
+    void abandon() {
+        if (!replaying) return;
+        env.logger.severe("warning: bot schedule replay diverged with " + toReplay.size() + " claims left, bots play on their own from now on");
+        toReplay.clear();
+        replaying = false;
+    }
+
+    /**
+     * Writes the recorded claims to the schedule file (does nothing unless recording).
+     */
+    public void save() {
+        if (!recording) return;
+        try (BufferedWriter writer = Files.newBufferedWriter(Paths.get(env.config.botScheduleFile), StandardCharsets.UTF_8)) {
+            writer.write("# seed " + env.config.seed + ": time player slots");
+            writer.newLine();
+            for (Claim claim : recorded) {
+                StringBuilder line = new StringBuilder().append(claim.time).append(' ').append(claim.player);
+                Arrays.stream(claim.slots).forEach(slot -> line.append(' ').append(slot));
+                writer.write(line.toString());
+                writer.newLine();
+            }
+        } catch (IOException e) {
+            env.logger.severe("cannot write bot schedule " + env.config.botScheduleFile + ": " + e);
+        }
+    }
+}
@@ -1,10 +1,21 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.GameEvents;
+import bguspl.set.GameJournal;
+import bguspl.set.GameMetrics;
+import bguspl.set.MonitorProfiler;
+import java.util.Arrays;
 import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
+import java.util.Random;
 import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.BooleanSupplier;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 
@@ -46,6 +57,50 @@ public class Dealer implements Runnable {
     protected ConcurrentLinkedQueue<Player> playersQueue;
 
     protected Thread dealerThread;
+
+    /**
+     * The random generator for shuffling and dealing (derived from the game seed).
+     */
+    private final Random random;
+
+    /**
+     * The stream of the dealer's random generator (player i uses stream i + 1).
+     */
+    static final long RANDOM_STREAM = 0;
+
+    /**
+     * How long the dealer waits for a player to act on a replayed claim before giving up on the replay.
+     */
+    private static final long REPLAY_TIMEOUT_NANOS = TimeUnit.SECONDS.toNanos(5);
+
+    /**
+     * How long the dealer parks between checks while it waits for a player to act on a replayed claim.
+     */
+    private static final long REPLAY_POLL_NANOS = TimeUnit.MICROSECONDS.toNanos(100);
+
+    /**
+     * The recorded or replayed key presses of the computer players.
+     */
+    protected final BotSchedule botSchedule;
+
+    /**
+     * The measures of the dealer's monitor (see MonitorProfiler).
+     */
+    private final MonitorProfiler.Monitor monitor;
+
+    /**
+     * The running player tasks (in the order they were started).
+     */
+    private Future<?>[] playerTasks;
+
+    /**
+     * Game statistics (written by the dealer thread, read once the game is over).
+     */
+    private int setsFound;
+    private int reshuffles;
+    private int[] winners = new int[0];
+    private long gameStartTime;
+    private long gameEndTime;
     protected boolean legalSet;
     private long startTime;
     private long elapsedTime;
@@ -57,17 +112,27 @@ public class Dealer implements Runnable {
     private int lastIndexOfSet;
     private long addedTime;
 
+    /**
+     * What the countdown display shows: the remaining time in its shown unit (seconds, or hundredths of a second when
+     * warning) and whether it warns. The display is updated only when these change.
+     */
+    private long shownCountdown = -1;
+    private boolean shownWarn;
+
     public Dealer(Env env, Table table, Player[] players) {
         this.env = env;
         this.table = table;
         this.players = players;
         deck = IntStream.range(0, env.config.deckSize).boxed().collect(Collectors.toList());
+        random = env.random(RANDOM_STREAM);
+        botSchedule = new BotSchedule(env);
+        monitor = env.monitors.monitor("dealer");
         setSize = 3;
         cardsOfSet = new Integer[setSize];
         slotsOfSet = new Integer [setSize];
         playersQueue = new ConcurrentLinkedQueue<Player>();
         legalSet = false;
-        startTime = System.currentTimeMillis();
+        startTime = env.clock.currentTimeMillis();
         NumOfEmptySlots = 12;
         placingCards = true;
         waitingTime = 5;
@@ -83,32 +148,78 @@ public class Dealer implements Runnable {
     public void run() {
         System.out.printf("Info: Thread %s starting.%n", Thread.currentThread().getName());
         this.dealerThread = Thread.currentThread();
+        gameStartTime = env.clock.currentTimeMillis();
+        env.journal.record(GameJournal.GAME_START, players.length, env.config.tableSize, env.config.deckSize,
+                (int) env.config.seed, (int) (env.config.seed >>> 32));
 
 
-         // create the player threads
-        for(Player player : players)
+         // start the player threads (on the game's executor)
+        playerTasks = new Future<?>[players.length];
+        for(int i = 0; i < players.length; i++)
         {
-             Thread playerThread = new Thread(player, "player");
-             playerThread.start();         
+             playerTasks[i] = env.executor.start("player-" + i, players[i]);
         }
 
 
         while (!shouldFinish()) {
+            GameEvents.Round round = new GameEvents.Round();
+            round.begin();
+            int deckAtStart = deck.size();
+            int setsAtStart = setsFound;
             placeCardsOnTable();
             timerLoop();       
+            boolean timedOut = !terminate;
+            if(timedOut)
+            {
+                reshuffles++;
+                env.metrics.reshuffle();
+            }
             updateTimerDisplay(false);
-            playersQueue.clear();
+            releaseQueuedPlayers();
             this.env.ui.removeTokens();
             removeAllCardsFromTable();
+            if(timedOut)
+            {
+                env.journal.record(GameJournal.RESHUFFLE, reshuffles, deck.size());
+                GameEvents.Reshuffle reshuffle = new GameEvents.Reshuffle();
+                if(reshuffle.shouldCommit())
+                {
+                    reshuffle.deck = deck.size();
+                    reshuffle.commit();
+                }
+            }
+            round.end();
+            if(round.shouldCommit())
+            {
+                round.deck = deckAtStart;
+                round.sets = setsFound - setsAtStart;
+                round.timedOut = timedOut;
+                round.commit();
+            }
             
         }
+        gameEndTime = env.clock.currentTimeMillis();
+        env.journal.record(GameJournal.GAME_END, setsFound, reshuffles);
         announceWinners();
+        terminatePlayers();
+        botSchedule.save();
         System.out.printf("Info: Thread %s terminated.%n", Thread.currentThread().getName());
-        try {
-            this.wait(env.config.endGamePauseMillies);
-        } catch (InterruptedException e) {}
-        env.ui.dispose();
-        notifyAll();
+    }
+
+    /**
+     * Terminates the player threads in reverse order to the order they were created in, and waits for them to end.
+     */
+    private void terminatePlayers() {
+        for(int i = players.length - 1; i >= 0; i--)
+        {
+            players[i].terminate();
+            try {
+                playerTasks[i].get();
+            } catch (InterruptedException ignored) {
+            } catch (ExecutionException e) {
+                env.logger.severe("player " + i + " failed: " + e.getCause());
+            }
+        }
     }
 
     /**
@@ -116,9 +227,11 @@ public class Dealer implements Runnable {
      */
     private void timerLoop() {
         resetReshuffleTime();
-        while (!terminate && System.currentTimeMillis() < reshuffleTime) {
+        while (!terminate && env.clock.currentTimeMillis() < reshuffleTime) {
             sleepUntilWokenOrTimeout();
+            env.metrics.loopIteration();
             updateTimerDisplay(false);
+            replayDueClaim();
             checkAllPlayersSets();             
             removeCardsFromTable();
             placeCardsOnTable();
@@ -131,8 +244,11 @@ public class Dealer implements Runnable {
      */
     public void terminate() {
         terminate = true;
+        long entering = monitor.entering();
         synchronized(this)
         {
+            monitor.entered(entering);
+            monitor.notified();
             this.notifyAll();
         }
     }
@@ -174,9 +290,10 @@ public class Dealer implements Runnable {
      * Check if any cards can be removed from the deck and placed on the table.
      */
     protected void placeCardsOnTable() {
+        long start = System.nanoTime();
         if(!deck.isEmpty()){
-            Collections.shuffle(deck);            
-            int slot = (int) ((Math.random() * (NumOfEmptySlots-1)));
+            Collections.shuffle(deck, random);            
+            int slot = randomEmptySlotIndex();
             while(!deck.isEmpty() && NumOfEmptySlots > 0 && !terminate)
             {
                 while(table.slotToCard[slot] != null){
@@ -187,21 +304,33 @@ public class Dealer implements Runnable {
                 }     
                 table.placeCard(deck.remove(0), slot);
                 NumOfEmptySlots--;
-                slot = (int) ((Math.random() * (NumOfEmptySlots-1)));                               
+                slot = randomEmptySlotIndex();                               
             }
         }
         placingCards = false;
+        env.metrics.cardsPlaced(System.nanoTime() - start);
     
     }
 
+    /**
+     * @return - a random slot to start looking for an empty slot from.
+     */
+    private int randomEmptySlotIndex() {
+        return NumOfEmptySlots > 1 ? random.nextInt(NumOfEmptySlots - 1) : 0;
+    }
+
     /**
      * Sleep for a fixed amount of time or until the thread is awakened for some purpose.
      */
     private void sleepUntilWokenOrTimeout() {
+        long entering = monitor.entering();
         synchronized(this)
         {
+            monitor.entered(entering);
             try{
-                this.wait(waitingTime);
+                long waiting = monitor.waiting();
+                env.clock.await(this, waitingTime);
+                monitor.woken(waiting, false); // a timed wait, the dealer has nothing to go back to waiting for
             }
             catch(InterruptedException e){}
         }   
@@ -213,7 +342,7 @@ public class Dealer implements Runnable {
     private void updateTimerDisplay(boolean reset) {
 
         boolean red = false;
-        elapsedTime = startTime + (this.env.config.turnTimeoutMillis) - System.currentTimeMillis();
+        elapsedTime = startTime + (this.env.config.turnTimeoutMillis) - env.clock.currentTimeMillis();
         if(elapsedTime > env.config.turnTimeoutWarningMillis){
             elapsedTime += addedTime;
         }
@@ -226,10 +355,16 @@ public class Dealer implements Runnable {
             elapsedTime = 0;
         if(elapsedTime <= 0)
             elapsedTime = 0;
-        this.env.ui.setCountdown(elapsedTime, red);
+        long shown = red ? elapsedTime / 10 : elapsedTime / 1000;
+        if(shown != shownCountdown || red != shownWarn)
+        {
+            shownCountdown = shown;
+            shownWarn = red;
+            this.env.ui.setCountdown(elapsedTime, red);
+        }
         if(elapsedTime + addedTime <= 0 || reset)
         {
-            startTime = System.currentTimeMillis();          
+            startTime = env.clock.currentTimeMillis();          
         }
 
     }
@@ -259,36 +394,8 @@ public class Dealer implements Runnable {
      */
     private void announceWinners() {
 
-        int[] allPlayersScores = new int [players.length];
-        LinkedList<Integer> allWinnersIds = new LinkedList<>();
-        for(Player player : players)
-        {
-            allPlayersScores[player.id] = player.getScore();
-        }
-
-        int maxScore = allPlayersScores[0];
-        for(int i = 0; i < allPlayersScores.length; i++)
-        {
-            if(allPlayersScores[i] > maxScore)
-            {
-                maxScore = allPlayersScores[i];
-            }
-        }
-    
-        for(int i = 0; i < allPlayersScores.length; i++)
-        {
-            if(allPlayersScores[i] == maxScore)
-            {
-                allWinnersIds.add(i);
-            }
-        }
-    
-        int[] winners = new int [allWinnersIds.size()];
-    
-        for(int i = 0; i < winners.length; i++)
-        {
-            winners[i] = allWinnersIds.get(i);
-        }
+        // the score index keeps the players ranked, so the leaders are read off its head
+        winners = env.scores.leaders();
     
         this.env.ui.announceWinner(winners);
             
@@ -300,6 +407,49 @@ public class Dealer implements Runnable {
         return deck;
     }
 
+    /**
+     * @return - the ids of the players with the highest score (known once the game is over).
+     */
+    public int[] getWinners()
+    {
+        return winners.clone();
+    }
+
+    /**
+     * @return - the current scores of the players, by player id.
+     */
+    public int[] getScores()
+    {
+        int[] scores = new int[players.length];
+        for(Player player : players)
+            scores[player.id] = player.getScore();
+        return scores;
+    }
+
+    /**
+     * @return - the number of legal sets claimed so far.
+     */
+    public int getSetsFound()
+    {
+        return setsFound;
+    }
+
+    /**
+     * @return - the number of times the turn timed out and the table was collected.
+     */
+    public int getReshuffles()
+    {
+        return reshuffles;
+    }
+
+    /**
+     * @return - how long the game lasted, on the game clock (known once the game is over).
+     */
+    public long getGameMillis()
+    {
+        return gameEndTime - gameStartTime;
+    }
+
 
      /**
      * Checking if a set chosen by the player is a legal set.
@@ -309,11 +459,17 @@ public class Dealer implements Runnable {
      * @post - If set is legal we reward the player.
      * @post - If set is legal we reset the timer.
      * @post - If set is ilegal we penalize the player.
-     * @post - We notify all of the player that waited for the dealer to check their set.
+     * @post - Only the player is released once its verdict is delivered (by checkAllPlayersSets), the other players
+     *         are not woken, unless the set took cards they had tokens on.
      * @return - True if the player's set is legal and false if illegal.
      */
     public boolean checkSet(Player player)
     {
+        GameEvents.ClaimJudged judged = new GameEvents.ClaimJudged();
+        judged.begin();
+        if(judged.isEnabled())
+            judged.slots = Arrays.toString(slotsOfSet); // the claimed slots
+        int verdict;
 
         int[] setToCheck = new int[setSize];
         for(int i = 0; i < setToCheck.length; i++)
@@ -327,6 +483,10 @@ public class Dealer implements Runnable {
         if(this.env.util.testSet(setToCheck))
         {
             legalSet = true;       
+            setsFound++;
+            verdict = 1;
+            env.journal.record(GameJournal.VERDICT, player.id, verdict);
+            env.metrics.claimJudged(verdict);
             removeCardsFromTable();
             player.point();
             resetReshuffleTime();
@@ -336,12 +496,27 @@ public class Dealer implements Runnable {
         else if(slotsOfSet[lastIndexOfSet] != null)
         {
             legalSet = false;
+            verdict = 0;
+            env.journal.record(GameJournal.VERDICT, player.id, verdict);
+            env.metrics.claimJudged(verdict);
             player.penalty();
         }
 
-        for(Player aPlayer: players)
-            aPlayer.wakePlayer();
+        else
+        {
+            verdict = -1;
+            env.journal.record(GameJournal.VERDICT, player.id, verdict);
+            env.metrics.claimJudged(verdict);
+        }
 
+        judged.end();
+        if(judged.shouldCommit())
+        {
+            judged.player = player.id;
+            judged.cards = Arrays.toString(setToCheck);
+            judged.verdict = verdict;
+            judged.commit();
+        }
 
         return legalSet;
 
@@ -349,12 +524,23 @@ public class Dealer implements Runnable {
 
     public void wakeDealer()
     {
+        long entering = monitor.entering();
         synchronized(this)
         {
+            monitor.entered(entering);
+            monitor.notified();
             this.notifyAll();
         }
     }
 
+    /**
+     * @return - the number of claims waiting for the dealer.
+     */
+    public int getQueuedClaims()
+    {
+        return playersQueue.size();
+    }
+
     public Thread getDealerThread()
     {
         return this.dealerThread;
@@ -371,6 +557,8 @@ public class Dealer implements Runnable {
         if(!playersQueue.isEmpty())
         {
             Player player = playersQueue.remove();
+            long dequeued = System.nanoTime();
+            env.metrics.latency(player.id, GameMetrics.DEALER_QUEUE, dequeued - player.claimQueuedNanos);
             int i = 0;
             if (player.tokens.size() == setSize) {  
 
@@ -382,24 +570,98 @@ public class Dealer implements Runnable {
 
                 }
 
+                int[] slots = new int[setSize];
+                for(int j = 0; j < setSize; j++)
+                    slots[j] = slotsOfSet[j];
+                botSchedule.record(player.id, slots);
+                env.journal.record(GameJournal.CLAIM, player.id, slots[0], slots[1], slots[2], 0);
                 this.checkSet(player);
                 cardsOfSet = new Integer[setSize];
                 slotsOfSet = new Integer[setSize];
             }
+            env.metrics.latency(player.id, GameMetrics.VERIFICATION, System.nanoTime() - dequeued);
+            player.verdictDelivered();
         }
         
     }
 
+    /**
+     * Discards the claims that were not judged (e.g. on reshuffle) and releases the players that made them.
+     */
+    private void releaseQueuedPlayers()
+    {
+        Player player;
+        while((player = playersQueue.poll()) != null)
+            player.verdictDelivered();
+    }
+
+    /**
+     * When replaying a bot schedule, feeds the next recorded claim to its player once its time has come and waits
+     * until the player submits it, so that it is judged in this very iteration like it was in the recorded game.
+     * The game clock does not move meanwhile, so on a virtual clock the claim is judged at the recorded time.
+     */
+    private void replayDueClaim()
+    {
+        if(!botSchedule.isReplaying())
+            return;
+        BotSchedule.Claim claim = botSchedule.pollDue();
+        if(claim == null)
+            return;
+
+        Player player = players[claim.player];
+        List<Integer> presses = new LinkedList<>();
+        List<Integer> claimed = new LinkedList<>();
+        for(int slot : claim.slots)
+            claimed.add(slot);
+        for(Integer slot : player.tokens)   // tokens that are not part of the claim are taken off first
+            if(!claimed.contains(slot))
+                presses.add(slot);
+        for(Integer slot : claimed)         // then the missing ones are placed (the last one submits the claim)
+            if(!player.tokens.contains(slot))
+                presses.add(slot);
+        if(presses.isEmpty() || player.tokens.contains(presses.get(presses.size() - 1)))
+        {
+            presses.add(claim.slots[claim.slots.length - 1]); // re-claiming the same set: take one off and put it back
+            presses.add(claim.slots[claim.slots.length - 1]);
+        }
+
+        for(Integer slot : presses)
+        {
+            if(!awaitReplay(player::readyForInput))
+                break;
+            player.keyPressed(slot);
+        }
+        if(!awaitReplay(() -> playersQueue.contains(player)))
+            botSchedule.abandon();
+    }
+
+    /**
+     * Waits (in real time, the game clock does not move) until a replay condition holds.
+     *
+     * @return - true iff the condition holds, false if it did not within the replay timeout.
+     */
+    private boolean awaitReplay(BooleanSupplier condition)
+    {
+        long deadline = System.nanoTime() + REPLAY_TIMEOUT_NANOS;
+        while(!condition.getAsBoolean())
+        {
+            if(terminate || System.nanoTime() > deadline)
+                return false;
+            LockSupport.parkNanos(REPLAY_POLL_NANOS);
+        }
+        return true;
+    }
+
     private void resetReshuffleTime()
     {
-        startTime = System.currentTimeMillis();
-        reshuffleTime = System.currentTimeMillis() + this.env.config.turnTimeoutMillis;
+        startTime = env.clock.currentTimeMillis();
+        reshuffleTime = startTime + this.env.config.turnTimeoutMillis;
     }
 
     private void resetElapsedTime()
     {
-        startTime = System.currentTimeMillis();
-        elapsedTime = startTime + this.env.config.turnTimeoutMillis - System.currentTimeMillis();
+        startTime = env.clock.currentTimeMillis();
+        elapsedTime = this.env.config.turnTimeoutMillis;
     }
 
     public boolean PlacingCards(){
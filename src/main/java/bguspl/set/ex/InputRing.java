@@ -0,0 +1,149 @@
+package bguspl.set.ex;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded, lock-free, single-producer single-consumer ring of slot presses.
+ * The producer is whoever delivers input for one player (the Swing EDT for humans, the AI thread for computer
+ * players) and the consumer is the player thread. Neither side ever blocks: when the ring is full the newest press
+ * is dropped and counted.
+ *
+ * @inv 0 <= tail - head <= capacity
+ */
+class InputRing {
+
+    /**
+     * The value returned by poll when the ring is empty.
+     */
+    static final int EMPTY = -1;
+
+    private final int[] slots;
+
+    /**
+     * The times (System.nanoTime) the presses were offered at.
+     */
+    private final long[] offeredNanos;
+
+    /**
+     * The time the press last polled was offered at (used only by the consumer).
+     */
+    private long polledOfferNanos;
+
+    /**
+     * The sequence of the next press to be read (written only by the consumer).
+     */
+    private final AtomicLong head = new AtomicLong();
+
+    /**
+     * The sequence of the next press to be written (written only by the producer).
+     */
+    private final AtomicLong tail = new AtomicLong();
+
+    /**
+     * Counters of presses accepted into and dropped from the ring (written only by the producer).
+     */
+    private final AtomicLong accepted = new AtomicLong();
+    private final AtomicLong dropped = new AtomicLong();
+
+    /**
+     * The thread to unpark when a press arrives (null if the consumer is not registered).
+     */
+    private volatile Thread consumer;
+
+    /**
+     * @param capacity - the maximal number of pending presses.
+     */
+    InputRing(int capacity) {
+        if (capacity <= 0)
+            throw new IllegalArgumentException("capacity must be positive: " + capacity);
+        slots = new int[capacity];
+        offeredNanos = new long[capacity];
+    }
+
+    /**
+     * Registers the calling thread as the consumer, so that offers wake it up if it is parked.
+     */
+    void bindConsumer() {
+        consumer = Thread.currentThread();
+    }
+
+    /**
+     * Adds a press to the ring, never blocking and never throwing. Producer side only.
+     *
+     * @param slot - the slot that was pressed.
+     * @return - true iff the press was accepted, false if the ring was full and the press was dropped.
+     */
+    boolean offer(int slot) {
+        long t = tail.get();
+        if (t - head.get() >= slots.length) {
+            drop();
+            return false;
+        }
+        slots[(int) (t % slots.length)] = slot;
+        offeredNanos[(int) (t % slots.length)] = System.nanoTime();
+        tail.lazySet(t + 1); // publishes the slot and time written above
+        accepted.lazySet(accepted.get() + 1);
+        wakeConsumer();
+        return true;
+    }
+
+    /**
+     * Counts a press that was rejected before reaching the ring. Producer side only.
+     */
+    void drop() {
+        dropped.lazySet(dropped.get() + 1);
+    }
+
+    /**
+     * Unparks the consumer (if it is registered), e.g. to hand it something other than a press. Any thread.
+     */
+    void wakeConsumer() {
+        Thread waiting = consumer;
+        if (waiting != null) LockSupport.unpark(waiting);
+    }
+
+    /**
+     * Removes the oldest press from the ring. Consumer side only.
+     *
+     * @return - the slot of the oldest press or EMPTY if there is none.
+     */
+    int poll() {
+        long h = head.get();
+        if (h == tail.get()) return EMPTY;
+        int slot = slots[(int) (h % slots.length)];
+        polledOfferNanos = offeredNanos[(int) (h % slots.length)];
+        head.lazySet(h + 1);
+        return slot;
+    }
+
+    /**
+     * Discards all pending presses. Consumer side only.
+     */
+    void clear() {
+        head.lazySet(tail.get());
+    }
+
+    /**
+     * @return - the time (System.nanoTime) the press last polled was offered at. Consumer side only.
+     */
+    long polledOfferNanos() {
+        return polledOfferNanos;
+    }
+
+    boolean isEmpty() {
+        return head.get() == tail.get();
+    }
+
+    int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    long acceptedCount() {
+        return accepted.get();
+    }
+
+    long droppedCount() {
+        return dropped.get();
+    }
+}
@@ -1,11 +1,19 @@
 package bguspl.set.ex;
 
-import java.lang.Thread.State;
+import java.util.Random;
 import java.util.concurrent.ArrayBlockingQueue;
 import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
 
 
 import bguspl.set.Env;
+import bguspl.set.GameEvents;
+import bguspl.set.GameJournal;
+import bguspl.set.GameMetrics;
+import bguspl.set.MonitorProfiler;
 
 /**
  * This class manages the players' threads and data
@@ -31,15 +39,21 @@ public class Player implements Runnable {
     public final int id;
 
     /**
-     * The thread representing the current player.
+     * The thread representing the current player (null when not running, guarded by this).
      */
     private Thread playerThread;
 
     /**
-     * The thread of the AI (computer) player (an additional thread used to generate key presses).
+     * The thread of the AI (computer) player (an additional thread used to generate key presses, null when not
+     * running, guarded by this). Threads may be pooled workers, so they are only interrupted while running our tasks.
      */
     private Thread aiThread;
 
+    /**
+     * The running task of the AI (computer) player.
+     */
+    private Future<?> aiTask;
+
     /**
      * True iff the player is human (not a computer player).
      */
@@ -59,15 +73,45 @@ public class Player implements Runnable {
 
 
     private Dealer dealer;
-    private BlockingQueue<Integer> actionsQueue;
+
+    /**
+     * The pending slot presses of the player (filled by the input source, drained by the player thread).
+     */
+    private final InputRing actionsQueue;
+
+    /**
+     * True iff the player thread is waiting for the dealer to check its set (presses are dropped meanwhile).
+     */
+    private volatile boolean awaitingVerdict;
+
+    /**
+     * The time (System.nanoTime) the player's claim was queued for the dealer (read by the dealer once it takes the
+     * claim off the queue) and the time the dealer delivered its verdict (written before awaitingVerdict is cleared).
+     */
+    long claimQueuedNanos;
+    private long verdictNanos;
+
+    /**
+     * The measures of the player's monitor (see MonitorProfiler).
+     */
+    private final MonitorProfiler.Monitor monitor;
+
+    /**
+     * The longest time the player thread parks while it has no pending presses.
+     */
+    private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(10);
     protected BlockingQueue<Integer> tokens;
-    private boolean tired;
-    private boolean tooTired;
+    private volatile boolean tired;
+    private volatile boolean tooTired;
     private long panTime;
     private long celebrationTime;
     private int numOfTokens;
     private long addedTime;
-    private long sleepTimePenalty;
+
+    /**
+     * The freeze second the display shows (-1 if none), so it is updated only when it changes.
+     */
+    private long shownFreeze = -1;
     private long sleepTimeTired;
  
 
@@ -89,15 +133,15 @@ public class Player implements Runnable {
         
         /* */
         this.dealer = dealer;
+        monitor = env.monitors.monitor("player-" + id);
         numOfTokens = 3;
-        actionsQueue = new ArrayBlockingQueue<>(numOfTokens);
+        actionsQueue = new InputRing(numOfTokens);
         tokens = new ArrayBlockingQueue<>(numOfTokens);
         tired = false;
         tooTired = false;
         panTime = 0;
         celebrationTime = 0;
         addedTime = 1000;
-        sleepTimePenalty = 100;
         sleepTimeTired = 500;
 
 
@@ -111,55 +155,81 @@ public class Player implements Runnable {
     public void run() {
 
     
-        playerThread = Thread.currentThread();
+        synchronized(this)
+        {
+            playerThread = Thread.currentThread();
+        }
+        actionsQueue.bindConsumer();
         System.out.printf("Info: Thread %s starting.%n", Thread.currentThread().getName());
         if (!human) createArtificialIntelligence();
        
         while (!terminate) {
             PlayerPenalty();
             PlayerCelebrate();
-            while(!actionsQueue.isEmpty())
+            int currentSlot;
+            while((currentSlot = actionsQueue.poll()) != InputRing.EMPTY)
             {       
-                Integer currentSlot = actionsQueue.remove();
-                if(currentSlot != null){                                    
-                    if(table.slotToCard[currentSlot] != null){ // Checking if theres a card in the chosen slot on table.
-                        if(!tired && !tooTired && !dealer.PlacingCards()){
-                                if(tokens.contains(currentSlot)) 
-                                { // If the slot was already chosen and is already on table we remove it.
-                                    tokens.remove(currentSlot);
-                                    this.table.removeToken(this.id, currentSlot);
-                                }
-                                else if(tokens.size() < numOfTokens){
-                                    if(tokens.size() == numOfTokens - 1)
-                                    {                                   
-                                        tokens.add(currentSlot); 
-                                        this.table.placeToken(this.id, currentSlot);
-                                        // Player is declearing a set.
-                                        // Sending the player to the dealer and waking him up to check the set of the player.
-                                        // The player is waiting for dealer to check his set.
-                                        dealer.playersQueue.add(this);
-                                        synchronized(this)
-                                        {
-                                            dealer.wakeDealer();
-                                            try {
-                                                this.wait();
-                                            } catch (InterruptedException e) {}
-                                        }
-                                        
+                long pressNanos = actionsQueue.polledOfferNanos();
+                env.metrics.latency(id, GameMetrics.INPUT_QUEUE, System.nanoTime() - pressNanos);
+                if(table.slotToCard[currentSlot] != null){ // Checking if theres a card in the chosen slot on table.
+                    if(!tired && !tooTired && !dealer.PlacingCards()){
+                            if(tokens.contains(currentSlot)) 
+                            { // If the slot was already chosen and is already on table we remove it.
+                                tokens.remove(currentSlot);
+                                this.table.removeToken(this.id, currentSlot);
+                            }
+                            else if(tokens.size() < numOfTokens){
+                                if(tokens.size() == numOfTokens - 1)
+                                {                                   
+                                    placeToken(currentSlot);
+                                    // Player is declearing a set.
+                                    // Sending the player to the dealer and waking him up to check the set of the player.
+                                    // The player is waiting for dealer to check his set.
+                                    GameEvents.ClaimSubmitted claim = new GameEvents.ClaimSubmitted();
+                                    claim.begin();
+                                    if(claim.isEnabled())
+                                        claim.slots = tokens.toString();
+                                    // awaiting before queued, so the dealer cannot deliver the verdict before we wait
+                                    awaitingVerdict = true;
+                                    claimQueuedNanos = System.nanoTime();
+                                    dealer.playersQueue.add(this);
+                                    dealer.wakeDealer();
+                                    // the dealer unparks only us, with our verdict (presses and interrupts unpark us too)
+                                    while(awaitingVerdict && !terminate)
+                                    {
+                                        long waiting = monitor.waiting();
+                                        LockSupport.park(this);
+                                        monitor.woken(waiting, awaitingVerdict && !terminate);
                                     }
-                                    else
+                                    if(!awaitingVerdict)
                                     {
-                                        // If its not the last chosen than set is not decleared yet, we place it on the table.
-                                        tokens.add(currentSlot);
-                                        this.table.placeToken(this.id, currentSlot);
+                                        long resumed = System.nanoTime();
+                                        env.metrics.latency(id, GameMetrics.WAKEUP, resumed - verdictNanos);
+                                        env.metrics.latency(id, GameMetrics.CLAIM, resumed - pressNanos);
                                     }
-                                
-                                
+                                    awaitingVerdict = false;
+                                    claim.end();
+                                    if(claim.shouldCommit())
+                                    {
+                                        claim.player = id;
+                                        claim.commit();
+                                    }
+                                    
+                                }
+                                else
+                                {
+                                    // If its not the last chosen than set is not decleared yet, we place it on the table.
+                                    placeToken(currentSlot);
                                 }
+                            
+                            
                             }
-                    }
+                        }
                 }
             }
+            // nothing to do until the next key press (offers unpark us) or a freeze starts
+            if(!terminate && actionsQueue.isEmpty())
+                LockSupport.parkNanos(this, IDLE_PARK_NANOS);
         }    
             
 
@@ -170,28 +240,60 @@ public class Player implements Runnable {
             this.notifyAll();
         }
 
-        if (!human) try { aiThread.join(); } catch (InterruptedException ignored) {}
+        Thread.interrupted(); // clear a pending termination interrupt before joining
+        if (!human) try { aiTask.get(); } catch (InterruptedException | ExecutionException ignored) {}
+        synchronized(this)
+        {
+            playerThread = null;
+        }
         System.out.printf("Info: Thread %s terminated.%n", Thread.currentThread().getName());
     }
 
+    /**
+     * Places a token of the player on the table (and counts how long it took).
+     */
+    private void placeToken(int slot) {
+        long start = System.nanoTime();
+        tokens.add(slot);
+        this.table.placeToken(this.id, slot);
+        env.metrics.latency(id, GameMetrics.TOKEN_PLACEMENT, System.nanoTime() - start);
+    }
+
     /**
      * Creates an additional thread for an AI (computer) player. The main loop of this thread repeatedly generates
-     * key presses. If the queue of key presses is full, the thread waits until it is not full.
+     * key presses. If the queue of key presses is full, the thread yields until it is not full, and while the player
+     * is frozen, waiting for the dealer or replaying a recorded schedule it sleeps.
      */
     private void createArtificialIntelligence() {
         // note: this is a very very smart AI (!)
-        aiThread = new Thread(() -> {
+        aiTask = env.executor.start("computer-" + id, () -> {
+            synchronized(this)
+            {
+                aiThread = Thread.currentThread();
+            }
             System.out.printf("Info: Thread %s starting.%n", Thread.currentThread().getName());
+            Random random = env.random(Dealer.RANDOM_STREAM + 1 + id);
             while (!terminate) {
                 int tableSize = env.config.tableSize;
-                int chosenSlot = (int)(Math.random()*tableSize);
-                if(table.slotToCard[chosenSlot] != null)
+                int chosenSlot = random.nextInt(tableSize);
+                if(tired || tooTired || awaitingVerdict || dealer.botSchedule.isReplaying()) {
+                    // presses would be dropped anyway (or the dealer presses for us), wait for that to pass
+                    try {
+                        env.clock.sleep(1);
+                    } catch (InterruptedException ignored) {}
+                }
+                else if(actionsQueue.size() < numOfTokens && table.slotToCard[chosenSlot] != null)
                     keyPressed(chosenSlot);
+                else
+                    Thread.yield();
 
             }
+            synchronized(this)
+            {
+                aiThread = null;
+            }
             System.out.printf("Info: Thread %s terminated.%n", Thread.currentThread().getName());
-        }, "computer-" + id);
-        aiThread.start();
+        });
     }
 
     /**
@@ -199,26 +301,48 @@ public class Player implements Runnable {
      */
     public void terminate() {
         terminate = true;
+        long entering = monitor.entering();
         synchronized(this)
         {
+            monitor.entered(entering);
+            monitor.notified();
             this.notifyAll();
+            // wake the threads from clock sleeps and parks as well
+            if (playerThread != null) playerThread.interrupt();
+            if (aiThread != null) aiThread.interrupt();
         }
     }
 
     /**
      * This method is called when a key is pressed.
+     * It never blocks or throws: presses on an empty slot, presses made while the player waits for the dealer and
+     * presses that find the queue full are dropped (and counted).
      *
      * @param slot - the slot corresponding to the key pressed.
      */
     public void keyPressed(int slot) {
        
-        if(actionsQueue.size() < numOfTokens && table.slotToCard[slot] != null  && Thread.currentThread().getState() != State.WAITING)
-        {
-            actionsQueue.add(slot);
-        }           
+        if(awaitingVerdict || table.slotToCard[slot] == null)
+            actionsQueue.drop();
+        else
+            actionsQueue.offer(slot);
        
     }
 
+    /**
+     * @return - the number of key presses that were queued for the player thread.
+     */
+    public long getAcceptedKeys() {
+        return actionsQueue.acceptedCount();
+    }
+
+    /**
+     * @return - the number of key presses that were dropped.
+     */
+    public long getDroppedKeys() {
+        return actionsQueue.droppedCount();
+    }
+
     /**
      * Award a point to a player and perform other related actions.
      *
@@ -228,12 +352,16 @@ public class Player implements Runnable {
     public void point() {
 
         if(!tired){
-            celebrationTime = System.currentTimeMillis();
+            celebrationTime = env.clock.currentTimeMillis();
             tired = true;
+            env.journal.record(GameJournal.FREEZE, id, (int) (env.config.pointFreezeMillis + addedTime));
+            env.metrics.frozen(id, env.config.pointFreezeMillis + addedTime);
         } 
 
         int ignored = table.countCards(); // this part is just for demonstration in the unit tests
         env.ui.setScore(id, ++score);
+        env.scores.update(id, score);
+        env.journal.record(GameJournal.SCORE, id, score);
     }
 
     /**
@@ -242,8 +370,10 @@ public class Player implements Runnable {
     public void penalty() {
 
         if(!tooTired){
-            panTime = System.currentTimeMillis();
+            panTime = env.clock.currentTimeMillis();
             tooTired = true;
+            env.journal.record(GameJournal.FREEZE, id, (int) env.config.penaltyFreezeMillis);
+            env.metrics.frozen(id, env.config.penaltyFreezeMillis);
         }   
 
         env.ui.setScore(id, score);
@@ -251,22 +381,25 @@ public class Player implements Runnable {
     // Puts the player in the penalty box instead of letting him continue playing
     public void PlayerPenalty() {
 
-        while(tooTired && !terminate){
-
-            long elapsedTime = panTime + this.env.config.penaltyFreezeMillis  - System.currentTimeMillis(); 
-            this.env.ui.setFreeze(this.id, elapsedTime);
-            try {
-                Thread.sleep(sleepTimePenalty);
-            } catch (InterruptedException e) {
-                e.printStackTrace();
-            }
-
-            if(elapsedTime <= 0)
-            {
-                tooTired = false;
+        if(tooTired)
+        {
+            GameEvents.Freeze freeze = new GameEvents.Freeze(); // allocated only for an actual freeze
+            freeze.begin();
+            while(tooTired && !terminate){
+
+                actionsQueue.clear(); // presses made while frozen are ignored
+                long now = env.clock.currentTimeMillis();
+                long elapsedTime = panTime + this.env.config.penaltyFreezeMillis  - now; 
+                showFreeze(elapsedTime);
+                if(elapsedTime <= 0)
+                {
+                    tooTired = false;
+                }
+                else try {
+                    env.clock.sleepUntil(now + nextShownFreezeChange(elapsedTime)); // never past the freeze end
+                } catch (InterruptedException ignored) {}
             }
-
-            actionsQueue.clear();
+            commitFreeze(freeze, true);
         }
       
     }
@@ -274,34 +407,84 @@ public class Player implements Runnable {
     //he will stay here instead of continuing to play
     public void PlayerCelebrate() {
 
-        while(tired && !terminate)
+        if(tired)
         {
-            long elapsedTime = celebrationTime + this.env.config.pointFreezeMillis + addedTime - System.currentTimeMillis(); 
-            this.env.ui.setFreeze(this.id, elapsedTime);
-            tired = true;
-            if(elapsedTime <= 0)
+            GameEvents.Freeze freeze = new GameEvents.Freeze();
+            freeze.begin();
+            while(tired && !terminate)
             {
-                tired = false;
+                actionsQueue.clear(); // presses made while frozen are ignored
+                long now = env.clock.currentTimeMillis();
+                long elapsedTime = celebrationTime + this.env.config.pointFreezeMillis + addedTime - now; 
+                showFreeze(elapsedTime);
+                tired = true;
+                if(elapsedTime <= 0)
+                {
+                    tired = false;
+                }
+                else try {
+                    // sleep on the game clock instead of spinning on it (a virtual clock only moves when others run)
+                    env.clock.sleepUntil(now + nextShownFreezeChange(elapsedTime));
+                } catch (InterruptedException ignored) {}
             }
-            actionsQueue.clear();
+            commitFreeze(freeze, false);
         }
         
     }
 
-    
-    public void wakePlayer()
-    {
-        synchronized(this)
+    private void commitFreeze(GameEvents.Freeze freeze, boolean penalty) {
+        freeze.end();
+        if(freeze.shouldCommit())
         {
-           this.notifyAll();
+            freeze.player = id;
+            freeze.penalty = penalty;
+            freeze.commit();
         }
     }
 
+    /**
+     * Updates the freeze display, only if the shown second changes.
+     */
+    private void showFreeze(long millies) {
+        long shown = millies > 0 ? millies / 1000 : -1;
+        if(shown != shownFreeze)
+        {
+            shownFreeze = shown;
+            env.ui.setFreeze(id, millies);
+        }
+    }
+
+    /**
+     * @return - the time until the shown freeze second changes (or the freeze ends).
+     */
+    private static long nextShownFreezeChange(long millies) {
+        return Math.min(millies, millies % 1000 + 1);
+    }
+
+    
+    /**
+     * @return - true iff the player thread would act on a key press right now.
+     */
+    boolean readyForInput() {
+        return !tired && !tooTired && !awaitingVerdict && actionsQueue.isEmpty();
+    }
+
+    /**
+     * Called by the dealer once it is done with the player's claim (judged or discarded), releasing the player.
+     */
+    public void verdictDelivered()
+    {
+        monitor.notified();
+        verdictNanos = System.nanoTime();
+        awaitingVerdict = false;
+        actionsQueue.wakeConsumer();
+    }
+
     public int getScore() {
         return score;
     }
     
-    public Thread getPlayerThread()
+    public synchronized Thread getPlayerThread()
     {
         return playerThread;
     }
@@ -311,13 +494,9 @@ public class Player implements Runnable {
     {
 
         try {
-            Thread.sleep(sleepTimeTired);
+            env.clock.sleep(sleepTimeTired);
             
-        } catch (InterruptedException e) {
-        
-            e.printStackTrace();
-        
-        }
+        } catch (InterruptedException ignored) {}
     }
 
   
@@ -343,6 +522,7 @@ public class Player implements Runnable {
         {
             tokens.remove(slotsOfSet);
             this.table.removeToken(this.id, slotsOfSet);
+            actionsQueue.wakeConsumer(); // the player thread sees its tokens changed without the dealer waiting for it
         }    
     }
 
@@ -0,0 +1,380 @@
+package bguspl.set.ex;
+
+import bguspl.set.Env;
+import bguspl.set.GameJournal;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.LockSupport;
+import java.util.stream.IntStream;
+
+/**
+ * Replays a game recorded in a game journal: drives a table (and through it the user interface) through the exact
+ * sequence of recorded events, in real time, scaled time or as fast as possible.
+ * The engine keeps its own copy of the game state (cards, tokens and scores), which it checks against the recording
+ * (table invariants, verdicts and scores) and against the driven table. A snapshot of that state is taken every
+ * SNAPSHOT_INTERVAL events, so seeking to any event costs at most that many (cheap) state updates.
+ *
+ * @inv 0 <= position <= recording.size
+ */
+public class ReplayEngine {
+
+    /**
+     * The number of events between two snapshots.
+     */
+    static final int SNAPSHOT_INTERVAL = 4096;
+
+    /**
+     * The largest number of violations kept (all of them are counted).
+     */
+    private static final int MAX_VIOLATIONS = 100;
+
+    /**
+     * The largest number of players (tokens are kept as a bit per player).
+     */
+    private static final int MAX_PLAYERS = Long.SIZE;
+
+    private static final int NONE = -1;
+
+    /**
+     * The game environment object (its journal should be disabled).
+     */
+    private final Env env;
+
+    /**
+     * The table driven by the replay.
+     */
+    private final Table table;
+
+    private final GameJournal.Recording recording;
+
+    private final int players;
+    private final int deckSize;
+    private final int setSize = 3;
+
+    /**
+     * The replayed game state.
+     */
+    private final int[] slotToCard;
+    private final int[] cardToSlot;
+    private final long[] tokens;
+    private final int[] scores;
+    private final int[][] claims;
+    private final boolean[] pointDue;
+    private int legalSets;
+    private int reshuffles;
+
+    /**
+     * The index of the next event to replay.
+     */
+    private int position;
+
+    /**
+     * The game state every SNAPSHOT_INTERVAL events (snapshot i is the state before event i * SNAPSHOT_INTERVAL).
+     */
+    private final List<Snapshot> snapshots = new ArrayList<>();
+
+    /**
+     * True while the recording itself is being checked (on construction).
+     */
+    private boolean verifying;
+
+    private final List<String> violations = new ArrayList<>();
+    private long violationCount;
+
+    /**
+     * A copy of the replayed game state.
+     */
+    private static class Snapshot {
+        final int[] slotToCard;
+        final int[] cardToSlot;
+        final long[] tokens;
+        final int[] scores;
+        final int[][] claims;
+        final boolean[] pointDue;
+        final int legalSets;
+        final int reshuffles;
+
+        Snapshot(ReplayEngine engine) {
+            slotToCard = engine.slotToCard.clone();
+            cardToSlot = engine.cardToSlot.clone();
+            tokens = engine.tokens.clone();
+            scores = engine.scores.clone();
+            claims = Arrays.stream(engine.claims).map(int[]::clone).toArray(int[][]::new);
+            pointDue = engine.pointDue.clone();
+            legalSets = engine.legalSets;
+            reshuffles = engine.reshuffles;
+        }
+
+        void restore(ReplayEngine engine) {
+            System.arraycopy(slotToCard, 0, engine.slotToCard, 0, slotToCard.length);
+            System.arraycopy(cardToSlot, 0, engine.cardToSlot, 0, cardToSlot.length);
+            System.arraycopy(tokens, 0, engine.tokens, 0, tokens.length);
+            System.arraycopy(scores, 0, engine.scores, 0, scores.length);
+            for (int i = 0; i < claims.length; i++)
+                System.arraycopy(claims[i], 0, engine.claims[i], 0, claims[i].length);
+            System.arraycopy(pointDue, 0, engine.pointDue, 0, pointDue.length);
+            engine.legalSets = legalSets;
+            engine.reshuffles = reshuffles;
+        }
+    }
+
+    /**
+     * Prepares the replay: checks the whole recording and takes the snapshots. The table is not touched yet.
+     *
+     * @param env       - the environment object (the configuration must match the recorded game).
+     * @param table     - the table to drive (initially empty).
+     * @param recording - the recorded game.
+     * @throws IllegalArgumentException - if the recording does not start with the game start event (the journal ring
+     *                                  wrapped) or does not match the configuration.
+     */
+    public ReplayEngine(Env env, Table table, GameJournal.Recording recording) {
+        this.env = env;
+        this.table = table;
+        this.recording = recording;
+        if (recording.size == 0 || recording.type(0) != GameJournal.GAME_START)
+            throw new IllegalArgumentException("the recording does not start with the game start (first sequence "
+                    + recording.firstSequence + "), the journal should be larger");
+        players = recording.argument(0, 0);
+        int tableSize = recording.argument(0, 1);
+        deckSize = recording.argument(0, 2);
+        if (players > MAX_PLAYERS || players > env.config.players || tableSize != env.config.tableSize
+                || deckSize != env.config.deckSize)
+            throw new IllegalArgumentException("the recording (" + players + " players, table size " + tableSize
+                    + ", deck size " + deckSize + ") does not match the configuration");
+
+        slotToCard = new int[tableSize];
+        cardToSlot = new int[deckSize];
+        tokens = new long[tableSize];
+        scores = new int[players];
+        claims = new int[players][setSize];
+        pointDue = new boolean[players];
+        Arrays.fill(slotToCard, NONE);
+        Arrays.fill(cardToSlot, NONE);
+
+        verifying = true;
+        for (position = 0; position < recording.size; position++) {
+            if (position % SNAPSHOT_INTERVAL == 0) snapshots.add(new Snapshot(this));
+            apply(position, false);
+        }
+        if (recording.size % SNAPSHOT_INTERVAL == 0) snapshots.add(new Snapshot(this));
+        verifying = false;
+
+        snapshots.get(0).restore(this);
+        position = 0;
+    }
+
+    /**
+     * @return - the number of recorded events.
+     */
+    public int size() {
+        return recording.size;
+    }
+
+    /**
+     * @return - the index of the next event to replay.
+     */
+    public int position() {
+        return position;
+    }
+
+    /**
+     * @return - the violations found in the recording and while driving the table (at most MAX_VIOLATIONS of them).
+     */
+    public List<String> getViolations() {
+        return new ArrayList<>(violations);
+    }
+
+    /**
+     * @return - the number of violations found.
+     */
+    public long getViolationCount() {
+        return violationCount;
+    }
+
+    /**
+     * @return - the replayed scores of the players.
+     */
+    public int[] getScores() {
+        return scores.clone();
+    }
+
+    /**
+     * Replays events, driving the table.
+     *
+     * @param to    - the index of the event to stop before.
+     * @param speed - the speed relative to the recording (1 for real time), 0 or less for as fast as possible.
+     * @post - position == to, unless the thread was interrupted.
+     */
+    public void play(int to, double speed) {
+        to = Math.min(to, recording.size);
+        long startNanos = System.nanoTime();
+        long startTime = position < recording.size ? recording.time(position) : 0;
+        while (position < to && !Thread.currentThread().isInterrupted()) {
+            if (speed > 0) {
+                long due = startNanos + (long) ((recording.time(position) - startTime) / speed);
+                for (long wait; (wait = due - System.nanoTime()) > 0 && !Thread.currentThread().isInterrupted(); )
+                    LockSupport.parkNanos(this, wait);
+            }
+            apply(position++, true);
+        }
+    }
+
+    /**
+     * Moves to an event (before it is replayed) and brings the table to the state the game was in at that point.
+     *
+     * @param event - the index of the event.
+     */
+    public void seek(int event) {
+        event = Math.max(0, Math.min(event, recording.size));
+        snapshots.get(event / SNAPSHOT_INTERVAL).restore(this);
+        for (position = event - event % SNAPSHOT_INTERVAL; position < event; position++)
+            apply(position, false);
+        syncTable();
+    }
+
+    /**
+     * Brings the table and the user interface to the replayed state.
+     */
+    private void syncTable() {
+        for (int slot = 0; slot < slotToCard.length; slot++) {
+            Integer card = table.slotToCard[slot];
+            if (card != null && card != slotToCard[slot])
+                table.removeCard(slot);
+            if (slotToCard[slot] != NONE && table.slotToCard[slot] == null)
+                table.placeCard(slotToCard[slot], slot);
+            for (int player = 0; player < players; player++) {
+                boolean token = (tokens[slot] & (1L << player)) != 0;
+                if (token != Boolean.TRUE.equals(table.tokenToSlot[slot][player])) {
+                    if (token) table.placeToken(player, slot);
+                    else table.removeToken(player, slot);
+                }
+            }
+        }
+        for (int player = 0; player < players; player++)
+            env.ui.setScore(player, scores[player]);
+    }
+
+    /**
+     * Applies an event to the replayed state, and to the table if asked to.
+     */
+    private void apply(int event, boolean drive) {
+        int a = recording.argument(event, 0);
+        int b = recording.argument(event, 1);
+        switch (recording.type(event)) {
+            case GameJournal.GAME_START:
+                if (event != 0) violation(event, "a second game start");
+                break;
+            case GameJournal.DEAL:
+                if (slotToCard[b] != NONE) violation(event, "card " + a + " dealt to occupied slot " + b);
+                if (cardToSlot[a] != NONE) violation(event, "card " + a + " dealt while on slot " + cardToSlot[a]);
+                slotToCard[b] = a;
+                cardToSlot[a] = b;
+                if (drive) {
+                    table.placeCard(a, b);
+                    checkTable(event, b);
+                }
+                break;
+            case GameJournal.REMOVE:
+                if (slotToCard[b] != a) violation(event, "card " + a + " removed from slot " + b + " holding " + slotToCard[b]);
+                slotToCard[b] = NONE;
+                cardToSlot[a] = NONE;
+                tokens[b] = 0;
+                if (drive) {
+                    table.removeCard(b);
+                    checkTable(event, b);
+                }
+                break;
+            case GameJournal.TOKEN_PLACE:
+                if (slotToCard[b] == NONE) break; // the card was taken while the token was placed
+                tokens[b] |= 1L << a;
+                if (drive) table.placeToken(a, b);
+                break;
+            case GameJournal.TOKEN_REMOVE:
+                tokens[b] &= ~(1L << a);
+                if (drive) table.removeToken(a, b);
+                break;
+            case GameJournal.CLAIM:
+                for (int i = 0; i < setSize; i++)
+                    claims[a][i] = slotToCard[recording.argument(event, i + 1)];
+                break;
+            case GameJournal.VERDICT:
+                boolean set = isComplete(claims[a]) && env.util.testSet(claims[a]);
+                if (b == 1) {
+                    if (!set) violation(event, "player " + a + " scored a non-set " + Arrays.toString(claims[a]));
+                    legalSets++;
+                    pointDue[a] = true;
+                } else if (b == 0 && set)
+                    violation(event, "player " + a + " penalized for the set " + Arrays.toString(claims[a]));
+                break;
+            case GameJournal.SCORE:
+                if (!pointDue[a]) violation(event, "player " + a + " scored without a legal set");
+                if (b != scores[a] + 1) violation(event, "player " + a + " score went from " + scores[a] + " to " + b);
+                pointDue[a] = false;
+                scores[a] = b;
+                if (drive) env.ui.setScore(a, b);
+                break;
+            case GameJournal.FREEZE:
+                if (drive) env.ui.setFreeze(a, b);
+                break;
+            case GameJournal.RESHUFFLE:
+                reshuffles++;
+                if (a != reshuffles) violation(event, "reshuffle " + a + " recorded as reshuffle " + reshuffles);
+                if (!isEmpty(slotToCard))
+                    violation(event, "reshuffle with cards left on the table");
+                if (b != deckSize - setSize * legalSets)
+                    violation(event, "deck of " + b + " cards after " + legalSets + " sets");
+                break;
+            case GameJournal.GAME_END:
+                if (a != legalSets) violation(event, a + " sets found, " + legalSets + " replayed");
+                if (b != reshuffles) violation(event, b + " reshuffles, " + reshuffles + " replayed");
+                if (drive) env.ui.announceWinner(winners());
+                break;
+            case 0:
+                violation(event, "missing event");
+                break;
+            default:
+                violation(event, "unknown event type " + recording.type(event));
+        }
+    }
+
+    private static boolean isComplete(int[] cards) {
+        for (int card : cards)
+            if (card == NONE) return false;
+        return true;
+    }
+
+    private static boolean isEmpty(int[] slots) {
+        for (int card : slots)
+            if (card != NONE) return false;
+        return true;
+    }
+
+    /**
+     * @return - the ids of the players with the highest replayed score.
+     */
+    private int[] winners() {
+        int max = Arrays.stream(scores).max().orElse(0);
+        return IntStream.range(0, players).filter(player -> scores[player] == max).toArray();
+    }
+
+    /**
+     * Checks that the driven table holds what the recording says for a slot.
+     */
+    private void checkTable(int event, int slot) {
+        Integer card = table.slotToCard[slot];
+        if ((card == null ? NONE : card) != slotToCard[slot])
+            record(event, "table slot " + slot + " holds " + card + ", the recording says " + slotToCard[slot]);
+    }
+
+    private void violation(int event, String message) {
+        if (verifying) record(event, message);
+    }
+
+    private void record(int event, String message) {
+        if (violations.size() < MAX_VIOLATIONS)
+            violations.add("event " + event + " (sequence " + (recording.firstSequence + event) + "): " + message);
+        violationCount++;
+    }
+}
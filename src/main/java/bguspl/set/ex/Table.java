@@ -1,6 +1,8 @@
 package bguspl.set.ex;
 
 import bguspl.set.Env;
+import bguspl.set.GameEvents;
+import bguspl.set.GameJournal;
 import java.util.Arrays;
 import java.util.LinkedList;
 import java.util.List;
@@ -89,14 +91,21 @@ public class Table {
      * @post - the card placed is on the table, in the assigned slot.
      */
     public void placeCard(int card, int slot) {
-        try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {}
+        GameEvents.CardPlaced placed = new GameEvents.CardPlaced();
+        placed.begin();
+        delay();
 
         cardToSlot[card] = slot;
         slotToCard[slot] = card;
+        env.journal.record(GameJournal.DEAL, card, slot);
         
         this.env.ui.placeCard(card, slot);
+        placed.end();
+        if (placed.shouldCommit()) {
+            placed.slot = slot;
+            placed.card = card;
+            placed.commit();
+        }
     }
 
     /**
@@ -104,17 +113,28 @@ public class Table {
      * @param slot - the slot from which to remove the card.
      */
     public void removeCard(int slot) {
-        try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {}
+        GameEvents.CardRemoved removed = new GameEvents.CardRemoved();
+        removed.begin();
+        delay();
 
+        // the tokens on the card go with it, all at once
         for(int i = 0; i < env.config.players; i++){
+            if (Boolean.TRUE.equals(tokenToSlot[slot][i]))
+                env.journal.record(GameJournal.TOKEN_REMOVE, i, slot);
             tokenToSlot[slot][i] = false;
-            removeToken(i, slot);
         }
+        this.env.ui.removeTokens(slot);
 
+        Integer card = slotToCard[slot];
+        if (card != null) env.journal.record(GameJournal.REMOVE, card, slot);
         slotToCard[slot] = null;
         this.env.ui.removeCard(slot);
+        removed.end();
+        if (removed.shouldCommit()) {
+            removed.slot = slot;
+            removed.card = card != null ? card : -1;
+            removed.commit();
+        }
     }
 
     /**
@@ -123,14 +143,13 @@ public class Table {
      * @param slot   - the slot on which to place the token.
      */
     public void placeToken(int player, int slot) {
-        try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {}
+        delay();
 
        
         if(slotToCard[slot] != null)
         {
             tokenToSlot[slot][player] = true;
+            env.journal.record(GameJournal.TOKEN_PLACE, player, slot);
             this.env.ui.placeToken(player, slot);
         }
     }
@@ -143,17 +162,29 @@ public class Table {
      */
     public boolean removeToken(int player, int slot) {
         
-        try {
-            Thread.sleep(env.config.tableDelayMillis);
-        } catch (InterruptedException ignored) {}
+        delay();
 
         boolean removed = false;
+        if (Boolean.TRUE.equals(tokenToSlot[slot][player]))
+            env.journal.record(GameJournal.TOKEN_REMOVE, player, slot);
         tokenToSlot[slot][player]=false;
         this.env.ui.removeToken(player, slot);
         
         return removed;
     }
 
+    /**
+     * Waits the configured table delay (on the game clock) before an operation on the table.
+     */
+    private void delay() {
+        if (env.config.tableDelayMillis <= 0) return;
+        try {
+            env.clock.sleep(env.config.tableDelayMillis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt(); // let the caller's loop see the termination request
+        }
+    }
+
     public List<Integer> getCardsOnTable()
     {
         List<Integer> cardsOnTable = new LinkedList<>();
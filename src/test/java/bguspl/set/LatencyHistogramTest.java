@@ -0,0 +1,106 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LatencyHistogramTest {
+
+    LatencyHistogram histogram;
+
+    @BeforeEach
+    void setUp() {
+        histogram = new LatencyHistogram();
+    }
+
+    /**
+     * @return - true iff two values (the first lower) fall in the same bucket: the lowest percentile is the highest
+     * value of the bucket of the lower one, capped at the maximum (the higher one).
+     */
+    private static boolean sameBucket(long lower, long higher) {
+        LatencyHistogram histogram = new LatencyHistogram();
+        histogram.record(lower);
+        histogram.record(higher);
+        return histogram.percentile(50) == higher;
+    }
+
+    @Test
+    void empty() {
+        assertEquals(0, histogram.count());
+        assertEquals(0, histogram.max());
+        assertEquals(0, histogram.percentile(99));
+        assertEquals("none", histogram.toString());
+    }
+
+    @Test
+    void record_BucketBoundaries() {
+        assertFalse(sameBucket(30, 31));
+        assertFalse(sameBucket(31, 32));
+        assertTrue(sameBucket(32, 33));
+        assertFalse(sameBucket(33, 34));
+        assertTrue(sameBucket(62, 63));
+        assertFalse(sameBucket(63, 64));
+        assertTrue(sameBucket(64, 67));
+        assertFalse(sameBucket(67, 68));
+        assertTrue(sameBucket(LatencyHistogram.MAX_VALUE - 1, LatencyHistogram.MAX_VALUE));
+
+        histogram.record(LatencyHistogram.MAX_VALUE);
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.percentile(100));
+    }
+
+    @Test
+    void record_ClampsOutOfRange() {
+        histogram.record(-5);
+        assertEquals(1, histogram.count());
+        assertEquals(0, histogram.max());
+        assertEquals(0, histogram.percentile(100));
+
+        histogram.record(Long.MAX_VALUE);
+        histogram.record(LatencyHistogram.MAX_VALUE + 1);
+        assertEquals(3, histogram.count());
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.max());
+        assertEquals(LatencyHistogram.MAX_VALUE, histogram.percentile(99));
+    }
+
+    @Test
+    void percentile_NeverAboveMax() {
+        histogram.record(1000);
+        assertEquals(1000, histogram.percentile(50));
+
+        Random random = new Random(1);
+        for (int i = 0; i < 1000; i++) histogram.record(random.nextInt(1 << 20));
+        for (double percentile = 0; percentile <= 100; percentile += 0.5)
+            assertTrue(histogram.percentile(percentile) <= histogram.max());
+        assertEquals(histogram.max(), histogram.percentile(100));
+    }
+
+    @Test
+    void percentile_WithinASixteenth() {
+        for (long value = 1; value <= 1000; value++) histogram.record(value * 1000);
+
+        long median = histogram.percentile(50);
+        assertTrue(median >= 500_000 && median <= 500_000 + 500_000 / 16, "median " + median);
+    }
+
+    @Test
+    void add_MergesCounts() {
+        LatencyHistogram other = new LatencyHistogram();
+        histogram.record(10);
+        histogram.record(20);
+        other.record(5);
+        other.record(3000);
+        other.record(3000);
+
+        histogram.add(other);
+        assertEquals(5, histogram.count());
+        assertEquals(3000, histogram.max());
+        assertEquals(10, histogram.percentile(40));
+        assertEquals(3000, histogram.percentile(100));
+        assertEquals(3, other.count());
+    }
+}
@@ -0,0 +1,87 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class OperationRingTest {
+
+    OperationRing ring;
+
+    @BeforeEach
+    void setUp() {
+        ring = new OperationRing(4);
+    }
+
+    @Test
+    void pack_RoundTrip() {
+        long packed = OperationRing.pack(WireProtocol.CARD, 11, -1);
+        assertEquals(WireProtocol.CARD, OperationRing.operation(packed));
+        assertEquals(11, OperationRing.a(packed));
+        assertEquals(-1, OperationRing.b(packed));
+        assertTrue(packed != OperationRing.EMPTY);
+
+        packed = OperationRing.pack(WireProtocol.GAME_OVER, 0, 0);
+        assertEquals(WireProtocol.GAME_OVER, OperationRing.operation(packed));
+        assertTrue(packed != OperationRing.EMPTY);
+    }
+
+    @Test
+    void offerAndPoll_KeepsOrder() {
+        assertEquals(OperationRing.EMPTY, ring.poll());
+        for (int lap = 0; lap < 3; lap++) {
+            for (int i = 1; i <= 3; i++) assertTrue(ring.offer(OperationRing.pack(WireProtocol.SCORE, i, lap)));
+            for (int i = 1; i <= 3; i++) assertEquals(OperationRing.pack(WireProtocol.SCORE, i, lap), ring.poll());
+            assertEquals(OperationRing.EMPTY, ring.poll());
+        }
+    }
+
+    @Test
+    void offer_FullRingDropsAndCounts() {
+        for (int i = 0; i < 4; i++) assertTrue(ring.offer(OperationRing.pack(WireProtocol.CARD, i, i)));
+        assertFalse(ring.offer(OperationRing.pack(WireProtocol.CARD, 4, 4)));
+        assertEquals(1, ring.dropped());
+
+        assertEquals(OperationRing.pack(WireProtocol.CARD, 0, 0), ring.poll());
+        assertTrue(ring.offer(OperationRing.pack(WireProtocol.CARD, 5, 5)));
+        assertEquals(1, ring.dropped());
+    }
+
+    @Test
+    void constructor_RejectsBadCapacity() {
+        assertThrows(IllegalArgumentException.class, () -> new OperationRing(0));
+        assertThrows(IllegalArgumentException.class, () -> new OperationRing(6));
+    }
+
+    @Test
+    void offer_ConcurrentProducers() throws InterruptedException {
+        ring = new OperationRing(1 << 10);
+        int producers = 4;
+        int operations = 100_000;
+        Thread[] threads = new Thread[producers];
+        for (int p = 0; p < producers; p++) {
+            int producer = p;
+            threads[p] = new Thread(() -> {
+                for (int i = 0; i < operations; i++)
+                    while (!ring.offer(OperationRing.pack(WireProtocol.SCORE, producer, i))) Thread.yield();
+            });
+            threads[p].start();
+        }
+
+        // each producer's operations arrive in order, none lost
+        int[] next = new int[producers];
+        for (int received = 0; received < producers * operations; ) {
+            long packed = ring.poll();
+            if (packed == OperationRing.EMPTY) continue;
+            int producer = OperationRing.a(packed);
+            assertEquals(next[producer]++, OperationRing.b(packed));
+            received++;
+        }
+        for (Thread thread : threads) thread.join();
+        assertEquals(OperationRing.EMPTY, ring.poll());
+    }
+}
@@ -0,0 +1,109 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ScoreIndexTest {
+
+    ScoreIndex index;
+
+    @BeforeEach
+    void setUp() {
+        index = new ScoreIndex(4);
+    }
+
+    private int[] top(int k) {
+        int[] players = new int[k];
+        int count = index.top(players);
+        assertEquals(k, count);
+        return players;
+    }
+
+    @Test
+    void top_InitiallyById() {
+        assertArrayEquals(new int[]{0, 1, 2, 3}, top(4));
+        assertArrayEquals(new int[]{0, 1, 2, 3}, index.leaders());
+    }
+
+    @Test
+    void update_ReordersPlayers() {
+        index.update(2, 3);
+        index.update(0, 1);
+        index.update(3, 5);
+
+        assertArrayEquals(new int[]{3, 2, 0, 1}, top(4));
+        assertArrayEquals(new int[]{3}, index.leaders());
+        assertEquals(5, index.score(3));
+
+        index.update(1, 6);
+        assertArrayEquals(new int[]{1, 3}, top(2));
+        assertArrayEquals(new int[]{1}, index.leaders());
+    }
+
+    @Test
+    void top_TiesBrokenById() {
+        index.update(3, 2);
+        index.update(1, 2);
+        index.update(2, 1);
+
+        assertArrayEquals(new int[]{1, 3, 2, 0}, top(4));
+        assertArrayEquals(new int[]{1, 3}, index.leaders());
+    }
+
+    @Test
+    void top_RepeatedUpdatesOfAPlayer() {
+        for (int score = 1; score <= 10; score++) index.update(2, score);
+        index.update(2, 4);
+        index.update(2, 4);
+        index.update(0, 4);
+
+        // each player is listed once, at its current score
+        assertArrayEquals(new int[]{0, 2, 1, 3}, top(4));
+        assertEquals(4, index.score(2));
+        assertArrayEquals(new int[]{0, 2}, index.leaders());
+    }
+
+    @Test
+    void top_FewerPlayersThanAsked() {
+        index.update(1, 1);
+        int[] players = new int[6];
+
+        assertEquals(4, index.top(players));
+        assertArrayEquals(new int[]{1, 0, 2, 3}, Arrays.copyOf(players, 4));
+    }
+
+    @Test
+    void top_ConcurrentUpdatesListEveryPlayerOnce() throws InterruptedException {
+        int players = 8;
+        index = new ScoreIndex(players);
+        index.update(0, 1);
+        AtomicBoolean done = new AtomicBoolean();
+        // every update moves a player from the bottom of the ranking to its top
+        Thread writer = new Thread(() -> {
+            for (int score = 2; score <= 200_000; score++) index.update(score % players, score);
+            done.set(true);
+        });
+        writer.start();
+
+        int[] ranked = new int[players];
+        int reads = 0;
+        while (!done.get() || reads == 0) {
+            assertEquals(players, index.top(ranked));
+            boolean[] seen = new boolean[players];
+            for (int player : ranked) {
+                assertTrue(!seen[player], "player " + player + " listed twice in " + Arrays.toString(ranked));
+                seen[player] = true;
+            }
+            assertEquals(1, index.leaders().length);
+            reads++;
+        }
+        writer.join();
+    }
+}
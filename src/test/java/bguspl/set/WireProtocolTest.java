@@ -0,0 +1,195 @@
+package bguspl.set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class WireProtocolTest {
+
+    static final int TABLE_SIZE = 12;
+    static final int PLAYERS = 3;
+    static final int LOG_CAPACITY = 16;
+
+    GameState server;
+    WireProtocol.Reader reader;
+    ByteBuffer out;
+
+    @BeforeEach
+    void setUp() {
+        server = new GameState(TABLE_SIZE, PLAYERS, LOG_CAPACITY);
+        reader = new WireProtocol.Reader(new WireProtocol.Listener() {});
+        out = ByteBuffer.allocate(4096);
+    }
+
+    /**
+     * Applies one operation of each type, with arguments that change the state.
+     */
+    private void applyEachOperation(GameState state) {
+        state.apply(WireProtocol.CARD, 4, 61);
+        state.apply(WireProtocol.TOKEN_PLACED, 4, 2);
+        state.apply(WireProtocol.TOKEN_PLACED, 7, 1);
+        state.apply(WireProtocol.TOKEN_REMOVED, 4, 2);
+        state.apply(WireProtocol.SLOT_CLEARED, 7, 0);
+        state.apply(WireProtocol.TABLE_CLEARED, 0, 0);
+        state.apply(WireProtocol.SCORE, 1, 5);
+        state.apply(WireProtocol.FREEZE, 2, 3000);
+        state.apply(WireProtocol.COUNTDOWN, 1, 4500);
+        state.apply(WireProtocol.WINNER, 1, 0);
+        state.apply(WireProtocol.GAME_OVER, 0, 0);
+    }
+
+    private void welcome() throws ProtocolException {
+        WireProtocol.putWelcome(out, 0, server);
+        WireProtocol.putSnapshot(out, server);
+        receive();
+    }
+
+    private void receive() throws ProtocolException {
+        out.flip();
+        reader.read(out);
+        assertEquals(0, out.remaining());
+        out.clear();
+    }
+
+    private static void assertSameState(GameState expected, GameState actual) {
+        assertEquals(expected.version(), actual.version());
+        for (int slot = 0; slot < expected.tableSize; slot++) {
+            assertEquals(expected.card(slot), actual.card(slot));
+            for (int player = 0; player < expected.players; player++)
+                assertEquals(expected.hasToken(slot, player), actual.hasToken(slot, player));
+        }
+        for (int player = 0; player < expected.players; player++) {
+            assertEquals(expected.score(player), actual.score(player));
+            assertEquals(expected.freeze(player), actual.freeze(player));
+        }
+        assertEquals(expected.countdown(), actual.countdown());
+        assertEquals(expected.warn(), actual.warn());
+        assertEquals(expected.isOver(), actual.isOver());
+        assertArrayEquals(expected.winners(), actual.winners());
+    }
+
+    @Test
+    void snapshot_RoundTrip() throws ProtocolException {
+        server.apply(WireProtocol.CARD, 0, 80);
+        server.apply(WireProtocol.CARD, 11, 3);
+        server.apply(WireProtocol.TOKEN_PLACED, 11, 2);
+        server.apply(WireProtocol.SCORE, 2, 7);
+        server.apply(WireProtocol.FREEZE, 0, 1000);
+        server.apply(WireProtocol.COUNTDOWN, 1, 2500);
+        server.apply(WireProtocol.WINNER, 2, 0);
+
+        WireProtocol.putWelcome(out, 1, server);
+        WireProtocol.putSnapshot(out, server);
+        assertEquals(WireProtocol.welcomeSize() + WireProtocol.snapshotSize(server), out.position());
+        receive();
+
+        assertEquals(1, reader.player());
+        assertSameState(server, reader.state());
+    }
+
+    @Test
+    void delta_RoundTripEachOperation() throws ProtocolException {
+        welcome();
+        GameState expected = new GameState(TABLE_SIZE, PLAYERS, LOG_CAPACITY);
+        applyEachOperation(expected);
+
+        for (int version = 0; version < expected.version(); version++) {
+            int operation = expected.loggedOperation(version);
+            int from = server.version();
+            server.apply(operation, expected.loggedA(version), expected.loggedB(version));
+
+            assertEquals(WireProtocol.DELTA, WireProtocol.putChanges(out, server, from));
+            assertEquals(WireProtocol.HEADER + 8 + WireProtocol.OPERATION_SIZE[operation], out.position());
+            receive();
+            assertSameState(server, reader.state());
+        }
+    }
+
+    @Test
+    void delta_OfSeveralOperations() throws ProtocolException {
+        welcome();
+        int from = server.version();
+        server.apply(WireProtocol.CARD, 2, 17);
+        server.apply(WireProtocol.TOKEN_PLACED, 2, 0);
+        server.apply(WireProtocol.SCORE, 0, 1);
+
+        assertEquals(WireProtocol.DELTA, WireProtocol.putChanges(out, server, from));
+        assertEquals(WireProtocol.HEADER + 8 + WireProtocol.OPERATION_SIZE[WireProtocol.CARD]
+                        + WireProtocol.OPERATION_SIZE[WireProtocol.TOKEN_PLACED]
+                        + WireProtocol.OPERATION_SIZE[WireProtocol.SCORE], out.position());
+        receive();
+        assertSameState(server, reader.state());
+    }
+
+    @Test
+    void changes_SnapshotOnceNoLongerLogged() throws ProtocolException {
+        welcome();
+        int from = server.version();
+        for (int i = 0; i <= LOG_CAPACITY; i++) server.apply(WireProtocol.COUNTDOWN, 0, i);
+        assertEquals(from + 1, server.oldestLogged());
+
+        assertEquals(WireProtocol.SNAPSHOT, WireProtocol.putChanges(out, server, from));
+        assertEquals(WireProtocol.snapshotSize(server), out.position());
+        receive();
+        assertSameState(server, reader.state());
+    }
+
+    @Test
+    void changes_SnapshotWhenDeltaDoesNotFit() throws ProtocolException {
+        server = new GameState(1, 1, 64);
+        welcome();
+        int from = server.version();
+        for (int i = 0; i < 64; i++) server.apply(WireProtocol.COUNTDOWN, 0, i);
+        int deltaSize = WireProtocol.HEADER + 8 + 64 * WireProtocol.OPERATION_SIZE[WireProtocol.COUNTDOWN];
+        int snapshotSize = WireProtocol.snapshotSize(server);
+        assertEquals(from, server.oldestLogged());
+
+        out = ByteBuffer.allocate(deltaSize - 1);
+        assertEquals(WireProtocol.SNAPSHOT, WireProtocol.putChanges(out, server, from));
+        assertEquals(snapshotSize, out.position());
+        receive();
+        assertSameState(server, reader.state());
+    }
+
+    @Test
+    void changes_NothingWhenNothingFits() {
+        server.apply(WireProtocol.CARD, 0, 1);
+        out = ByteBuffer.allocate(WireProtocol.snapshotSize(server) - 1);
+
+        assertEquals(0, WireProtocol.putChanges(out, server, server.oldestLogged() - 1));
+        assertEquals(0, out.position());
+    }
+
+    @Test
+    void read_MessageSplitAcrossReads() throws ProtocolException {
+        WireProtocol.putWelcome(out, 2, server);
+        WireProtocol.putSnapshot(out, server);
+        int from = server.version();
+        applyEachOperation(server);
+        assertEquals(WireProtocol.DELTA, WireProtocol.putChanges(out, server, from));
+        out.flip();
+        byte[] bytes = new byte[out.remaining()];
+        out.get(bytes);
+
+        // the first read ends in the middle of the delta
+        int split = WireProtocol.welcomeSize() + WireProtocol.snapshotSize(new GameState(TABLE_SIZE, PLAYERS, 0)) + 7;
+        ByteBuffer in = ByteBuffer.allocate(bytes.length);
+        in.put(bytes, 0, split).flip();
+        reader.read(in);
+        assertEquals(from, reader.state().version());
+        assertEquals(7, in.remaining());
+        assertNotEquals(server.version(), reader.state().version());
+
+        in.compact().put(bytes, split, bytes.length - split).flip();
+        reader.read(in);
+        assertEquals(0, in.remaining());
+        assertEquals(2, reader.player());
+        assertSameState(server, reader.state());
+    }
+}
@@ -0,0 +1,66 @@
+package bguspl.set.ex;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class InputRingTest {
+
+    InputRing ring;
+
+    @BeforeEach
+    void setUp() {
+        ring = new InputRing(3);
+    }
+
+    @Test
+    void poll_EmptyRing() {
+        assertTrue(ring.isEmpty());
+        assertEquals(InputRing.EMPTY, ring.poll());
+    }
+
+    @Test
+    void offerAndPoll_KeepsOrder() {
+        ring.offer(4);
+        ring.offer(1);
+        ring.offer(7);
+        assertEquals(4, ring.poll());
+        assertEquals(1, ring.poll());
+        assertEquals(7, ring.poll());
+        assertEquals(InputRing.EMPTY, ring.poll());
+    }
+
+    @Test
+    void offer_FullRingDropsNewest() {
+        assertTrue(ring.offer(0));
+        assertTrue(ring.offer(1));
+        assertTrue(ring.offer(2));
+        assertFalse(ring.offer(3));
+        assertEquals(3, ring.acceptedCount());
+        assertEquals(1, ring.droppedCount());
+        assertEquals(0, ring.poll());
+    }
+
+    @Test
+    void offer_WrapsAround() {
+        for (int i = 0; i < 10; i++) {
+            assertTrue(ring.offer(i));
+            assertEquals(i, ring.poll());
+        }
+        assertEquals(10, ring.acceptedCount());
+        assertEquals(0, ring.droppedCount());
+    }
+
+    @Test
+    void clear() {
+        ring.offer(5);
+        ring.offer(6);
+        ring.clear();
+        assertEquals(0, ring.size());
+        assertTrue(ring.offer(8));
+        assertEquals(8, ring.poll());
+    }
+}
@@ -0,0 +1,104 @@
+package bguspl.set.ex;
+
+import bguspl.set.Config;
+import bguspl.set.Env;
+import bguspl.set.GameJournal;
+import bguspl.set.UserInterface;
+import bguspl.set.UtilImpl;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.logging.Logger;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.verify;
+
+@ExtendWith(MockitoExtension.class)
+class ReplayEngineTest {
+
+    @Mock
+    private UserInterface ui;
+    @Mock
+    private Logger logger;
+    @TempDir
+    Path directory;
+
+    Env env;
+    Table table;
+    GameJournal journal;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Properties properties = new Properties();
+        properties.put("HumanPlayers", "0");
+        properties.put("ComputerPlayers", "2");
+        properties.put("TableDelaySeconds", "0");
+        Config config = new Config(logger, properties);
+        env = new Env(logger, config, ui, new UtilImpl(config));
+        table = new Table(env);
+        journal = new GameJournal(directory.resolve("game").toString(), 2, 8);
+
+        // cards 0, 1 and 2 (features 0000, 0001 and 0002) are a set
+        journal.record(GameJournal.GAME_START, 2, config.tableSize, config.deckSize, 0, 0);
+        for (int card = 0; card < 3; card++)
+            journal.record(GameJournal.DEAL, card, card);
+        for (int slot = 0; slot < 3; slot++)
+            journal.record(GameJournal.TOKEN_PLACE, 0, slot);
+        journal.record(GameJournal.CLAIM, 0, 0, 1, 2, 0);
+        journal.record(GameJournal.VERDICT, 0, 1);
+        for (int card = 0; card < 3; card++)
+            journal.record(GameJournal.REMOVE, card, card);
+    }
+
+    private ReplayEngine replay() throws IOException {
+        return new ReplayEngine(env, table, GameJournal.read(directory.resolve("game").toString()));
+    }
+
+    @Test
+    void play_DrivesTableAndUserInterface() throws IOException {
+        journal.record(GameJournal.SCORE, 0, 1);
+        journal.record(GameJournal.DEAL, 3, 0);
+        ReplayEngine engine = replay();
+
+        engine.play(engine.size(), 0);
+
+        assertEquals(0, engine.getViolationCount(), engine.getViolations().toString());
+        assertEquals(3, (int) table.slotToCard[0]);
+        assertNull(table.slotToCard[1]);
+        assertArrayEquals(new int[]{1, 0}, engine.getScores());
+        verify(ui).setScore(0, 1);
+    }
+
+    @Test
+    void seek_RestoresCardsAndTokens() throws IOException {
+        journal.record(GameJournal.SCORE, 0, 1);
+        ReplayEngine engine = replay();
+        engine.play(engine.size(), 0);
+
+        engine.seek(7); // just before the claim
+
+        assertEquals(7, engine.position());
+        for (int slot = 0; slot < 3; slot++) {
+            assertEquals(slot, (int) table.slotToCard[slot]);
+            assertTrue(table.tokenToSlot[slot][0]);
+        }
+        assertArrayEquals(new int[]{0, 0}, engine.getScores());
+    }
+
+    @Test
+    void verify_ScoreThatSkipsAPoint() throws IOException {
+        journal.record(GameJournal.SCORE, 0, 2);
+
+        assertEquals(1, replay().getViolationCount());
+    }
+}